@@ -0,0 +1,207 @@
+package org.jmock.test.acceptance;
+
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.hamcrest.StringDescription;
+import org.jmock.ExpectationsExt;
+import org.jmock.Mockery;
+import org.jmock.Sequence;
+import org.jmock.States;
+import org.jmock.api.ExpectationError;
+import org.jmock.lib.concurrent.Blitzer;
+import org.jmock.lib.concurrent.Synchroniser;
+
+import testdata.MockedType;
+
+public class DeferredVerificationAcceptanceTests extends TestCase {
+    Mockery context = new Mockery();
+    MockedType mock = context.mock(MockedType.class, "mock");
+
+    @Override
+    public void setUp() {
+        context.setDefersVerification(true);
+    }
+
+    public void testReturnsStubbedValuesOrDefaultValues() {
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            stubbing (mock).returnInt(); will(returnValue(30));
+            allowing (mock).returnString(); will(returnValue("not returned"));
+        }});
+
+        assertEquals(30, mock.returnInt());
+        assertEquals("", mock.returnString());
+
+        context.assertIsSatisfied();
+    }
+
+    public void testReportsUnexpectedInvocationsWhenVerified() {
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            oneOf (mock).method1();
+        }});
+
+        mock.method1();
+        mock.method2();
+
+        String deferredMessage = failureOf(context);
+
+        Mockery eagerContext = new Mockery();
+        final MockedType eagerMock = eagerContext.mock(MockedType.class, "mock");
+        eagerContext.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            oneOf (eagerMock).method1();
+        }});
+        eagerMock.method1();
+        try {
+            eagerMock.method2();
+            fail("should have thrown ExpectationError");
+        }
+        catch (ExpectationError e) {
+            assertEquals("failure message", StringDescription.toString(e), deferredMessage);
+        }
+    }
+
+    public void testReplaysInvocationsAgainstCardinalities() {
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            oneOf (mock).method1();
+        }});
+
+        mock.method1();
+        mock.method1();
+
+        failureOf(context);
+    }
+
+    public void testReplaysInvocationsAgainstSequences() {
+        final Sequence sequence = context.sequence("sequence");
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            oneOf (mock).method1(); inSequence(sequence);
+            oneOf (mock).method2(); inSequence(sequence);
+        }});
+
+        mock.method2();
+        mock.method1();
+
+        failureOf(context);
+    }
+
+    public void testReplaysInvocationsAgainstStates() {
+        final States progress = context.states("progress").startsAs("started");
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            oneOf (mock).method1(); when(progress.is("started")); then(progress.is("finished"));
+            oneOf (mock).method2(); when(progress.is("finished"));
+        }});
+
+        mock.method1();
+        mock.method2();
+
+        context.assertIsSatisfied();
+    }
+
+    public void testDoesNotPerformActionsWhenVerifying() {
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            oneOf (mock).doSomething(); will(throwException(new IllegalStateException("should not be performed")));
+        }});
+
+        mock.doSomething();
+
+        context.assertIsSatisfied();
+    }
+
+    public void testLogsInvocationsFromAnyThreadWhenTheMockeryIsSynchronised() throws InterruptedException {
+        Blitzer blitzer = new Blitzer(10000, 4);
+
+        context.setThreadingPolicy(new Synchroniser());
+        mock = context.mock(MockedType.class, "synchronisedMock");
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            exactly(10000).of (mock).doSomething();
+        }});
+
+        try {
+            blitzer.blitz(new Runnable() {
+                public void run() {
+                    mock.doSomething();
+                }
+            });
+        }
+        finally {
+            blitzer.shutdown();
+        }
+
+        context.assertIsSatisfied();
+    }
+
+    public void testStillAppliesTheThreadingPolicy() throws InterruptedException {
+        final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+
+        Thread otherThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    mock.doSomething();
+                }
+                catch (Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        };
+        otherThread.start();
+        otherThread.join();
+
+        assertTrue("should have thrown ConcurrentModificationException", 
+                   thrown.get() instanceof ConcurrentModificationException);
+    }
+
+    public void testWaitsForInvocationsFromOtherThreads() {
+        context.setThreadingPolicy(new Synchroniser());
+        mock = context.mock(MockedType.class, "synchronisedMock");
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            oneOf (mock).doSomething();
+        }});
+
+        new Thread() {
+            @Override
+            public void run() {
+                mock.doSomething();
+            }
+        }.start();
+
+        context.waitForSatisfaction();
+    }
+
+    public void testVerifiesLoggedInvocationsWhenTurnedOff() {
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            oneOf (mock).method1();
+        }});
+
+        mock.method1();
+        context.setDefersVerification(false);
+
+        try {
+            mock.method1();
+            fail("should have thrown ExpectationError");
+        }
+        catch (ExpectationError e) {
+            // expected
+        }
+    }
+
+    public void testForgetsLoggedInvocationsWhenReset() {
+        mock.method1();
+        context.reset();
+
+        context.assertIsSatisfied();
+    }
+
+    private static String failureOf(Mockery context) {
+        try {
+            context.assertIsSatisfied();
+        }
+        catch (ExpectationError e) {
+            return StringDescription.toString(e);
+        }
+        fail("should have thrown ExpectationError");
+        return null;
+    }
+}
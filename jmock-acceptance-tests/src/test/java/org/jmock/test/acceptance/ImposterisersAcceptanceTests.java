@@ -3,6 +3,7 @@ package org.jmock.test.acceptance;
 
 import org.jmock.api.Imposteriser;
 import org.jmock.api.Invocation;
+import org.jmock.lib.BytecodeImposteriser;
 import org.jmock.lib.JavaReflectionImposteriser;
 import org.jmock.lib.action.CustomAction;
 import org.jmock.lib.action.VoidAction;
@@ -32,7 +33,8 @@ public class ImposterisersAcceptanceTests {
     public static Collection data() {
         Object[][] data = new Object[][]{
                 {new JavaReflectionImposteriser()},
-                {ClassImposteriser.INSTANCE}};
+                {ClassImposteriser.INSTANCE},
+                {BytecodeImposteriser.INSTANCE}};
         return Arrays.asList(data);
     }
 
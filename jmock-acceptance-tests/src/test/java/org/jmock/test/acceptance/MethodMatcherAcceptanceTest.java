@@ -7,6 +7,7 @@ import org.jmock.ExpectationsExt;
 import org.jmock.api.Imposteriser;
 import org.jmock.integration.junit4.JUnitRuleMockery;
 import org.jmock.internal.matcher.MethodMatcher;
+import org.jmock.lib.BytecodeImposteriser;
 import org.jmock.lib.JavaReflectionImposteriser;
 import org.jmock.lib.legacy.ClassImposteriser;
 import org.junit.Assert;
@@ -31,7 +32,8 @@ public class MethodMatcherAcceptanceTest {
     public static Collection data() {
         Object[][] data = new Object[][]{
                 {new JavaReflectionImposteriser()},
-                {ClassImposteriser.INSTANCE}};
+                {ClassImposteriser.INSTANCE},
+                {BytecodeImposteriser.INSTANCE}};
         return Arrays.asList(data);
     }
 
@@ -0,0 +1,193 @@
+package org.jmock.test.acceptance;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertThat;
+
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.hamcrest.StringDescription;
+import org.jmock.ExpectationsExt;
+import org.jmock.Mockery;
+import org.jmock.api.ExpectationError;
+import org.jmock.lib.concurrent.Blitzer;
+import org.jmock.lib.concurrent.Synchroniser;
+
+import testdata.MockedType;
+
+public class PureStubAcceptanceTests extends TestCase {
+    Mockery context = new Mockery();
+    MockedType mock = context.mock(MockedType.class, "mock");
+
+    public void testReturnsTheStubbedValue() {
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            stubbing (mock).returnString(); will(returnValue("stubbed"));
+            stubbing (mock).returnInt(); will(returnValue(30));
+        }});
+
+        assertEquals("stubbed", mock.returnString());
+        assertEquals(30, mock.returnInt());
+        assertEquals(30, mock.returnInt());
+
+        context.assertIsSatisfied();
+    }
+
+    public void testDoesNotOverrideExpectationsDeclaredBeforeIt() {
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            oneOf (mock).returnInt(); will(returnValue(1));
+            stubbing (mock).returnInt(); will(returnValue(30));
+        }});
+
+        assertEquals(1, mock.returnInt());
+        assertEquals(30, mock.returnInt());
+
+        context.assertIsSatisfied();
+    }
+
+    public void testCountsInvocationsButDoesNotRecordThem() {
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            stubbing (mock).returnInt(); will(returnValue(30));
+        }});
+
+        mock.returnInt();
+        mock.returnInt();
+
+        String description = StringDescription.toString(context);
+        assertThat(description, containsString("already invoked 2 times"));
+        assertThat(description, containsString("what happened before this: nothing!"));
+    }
+
+    public void testIsAnsweredFromAnyThreadWhenTheMockeryIsSynchronised() throws InterruptedException {
+        final AtomicInteger wrongResults = new AtomicInteger(0);
+        Blitzer blitzer = new Blitzer(1000, 4);
+
+        context.setThreadingPolicy(new Synchroniser());
+        mock = context.mock(MockedType.class, "synchronisedMock");
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            stubbing (mock).returnInt(); will(returnValue(30));
+        }});
+
+        try {
+            blitzer.blitz(new Runnable() {
+                public void run() {
+                    if (mock.returnInt() != 30) {
+                        wrongResults.incrementAndGet();
+                    }
+                }
+            });
+        }
+        finally {
+            blitzer.shutdown();
+        }
+
+        assertEquals("wrong results", 0, wrongResults.get());
+        assertThat(StringDescription.toString(context), containsString("already invoked 1000 times"));
+    }
+
+    public void testIsNotAnsweredFromAnotherThreadByASingleThreadedMockery() throws InterruptedException {
+        final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            stubbing (mock).returnInt(); will(returnValue(30));
+        }});
+
+        Thread otherThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    mock.returnInt();
+                }
+                catch (Throwable t) {
+                    thrown.set(t);
+                }
+            }
+        };
+        otherThread.start();
+        otherThread.join();
+
+        assertTrue("should have thrown ConcurrentModificationException", 
+                   thrown.get() instanceof ConcurrentModificationException);
+    }
+
+    public void testDispatchesInvocationsWithOtherParametersToOtherExpectations() {
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            stubbing (mock).doSomethingWith("stubbed");
+            oneOf (mock).doSomethingWith("expected");
+        }});
+
+        mock.doSomethingWith("stubbed");
+        mock.doSomethingWith("expected");
+
+        try {
+            mock.doSomethingWith("unexpected");
+            fail("should have thrown ExpectationError");
+        }
+        catch (ExpectationError e) {
+            // expected
+        }
+    }
+
+    public void testIsNoLongerAnsweredOnceTheTestHasFailed() {
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            stubbing (mock).returnInt(); will(returnValue(30));
+        }});
+
+        try {
+            mock.doSomething();
+            fail("should have thrown ExpectationError");
+        }
+        catch (ExpectationError e) {
+            // expected
+        }
+
+        try {
+            mock.returnInt();
+            fail("should have thrown ExpectationError");
+        }
+        catch (ExpectationError e) {
+            // expected
+        }
+    }
+
+    public void testIsForgottenWhenTheMockeryIsReset() {
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            stubbing (mock).returnInt(); will(returnValue(30));
+        }});
+        context.reset();
+
+        try {
+            mock.returnInt();
+            fail("should have thrown ExpectationError");
+        }
+        catch (ExpectationError e) {
+            // expected
+        }
+    }
+
+    public void testMustReturnAConstantValue() {
+        try {
+            context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+                stubbing (mock).returnInt(); will(onConsecutiveCalls(returnValue(1), returnValue(2)));
+            }});
+            fail("should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testMustReturnAValueOfTheReturnTypeOfTheMethod() {
+        try {
+            context.checking(new ExpectationsExt() {protected void expect() throws Exception{
+                stubbing (mock).returnInt(); will(returnValue("not an int"));
+            }});
+            fail("should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -5,6 +5,7 @@ import junit.framework.TestCase;
 import org.jmock.ExpectationsExt;
 import org.jmock.Mockery;
 import org.jmock.States;
+import org.jmock.TypedStates;
 import org.jmock.api.ExpectationError;
 import org.jmock.support.AssertThat;
 import testdata.MockedType;
@@ -38,6 +39,37 @@ public class StatesAcceptanceTest extends TestCase {
         mock.method1();
     }
     
+    public enum Readiness { UNREADY, READY }
+    
+    public void testCanUseTheConstantsOfAnEnumAsStates() {
+        final TypedStates<Readiness> typedReadiness = context.states("typedReadiness", Readiness.class).startsAs(Readiness.UNREADY);
+        
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception {
+            allowing (mock).method1(); when(typedReadiness.is(Readiness.READY));
+            allowing (mock).doSomething(); then(typedReadiness.is(Readiness.READY));
+        }});
+        
+        try {
+            mock.method1();
+            fail("should have thrown ExpectationError");
+        }
+        catch (ExpectationError e) {
+            AssertThat.stringIncludes("should describe state", "typedReadiness is UNREADY", e.toString());
+        }
+    }
+    
+    public void testAllowsExpectationsToOccurInCorrectStateOfAnEnum() {
+        final TypedStates<Readiness> typedReadiness = context.states("typedReadiness", Readiness.class).startsAs(Readiness.UNREADY);
+        
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception {
+            allowing (mock).method1(); when(typedReadiness.is(Readiness.READY));
+            allowing (mock).doSomething(); then(typedReadiness.is(Readiness.READY));
+        }});
+        
+        mock.doSomething();
+        mock.method1();
+    }
+    
     public void testCanStartInASpecificState() {
         context.checking(new ExpectationsExt() {protected void expect() throws Exception {
             allowing (mock).method1(); when(readiness.is("ready"));
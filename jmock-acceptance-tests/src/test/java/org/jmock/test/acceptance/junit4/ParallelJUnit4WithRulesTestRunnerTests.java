@@ -0,0 +1,92 @@
+package org.jmock.test.acceptance.junit4;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import junit.framework.TestCase;
+
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.ParallelJUnitRuleMockery;
+import org.jmock.test.acceptance.junit4.testdata.ParallelJUnit4WithRulesExamples;
+import org.junit.experimental.ParallelComputer;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+public class ParallelJUnit4WithRulesTestRunnerTests extends TestCase {
+    public void testGivesEachTestRunningInParallelItsOwnContext() {
+        Result result = runInParallel(ParallelJUnit4WithRulesExamples.SatisfyExpectationsAtTheSameTime.class);
+        
+        assertEquals("tests run",
+                     ParallelJUnit4WithRulesExamples.SatisfyExpectationsAtTheSameTime.TEST_COUNT, result.getRunCount());
+        assertEquals("failures: " + result.getFailures(), 0, result.getFailureCount());
+    }
+    
+    public void testOnlyFailsTheTestThatDoesNotSatisfyItsExpectations() {
+        Result result = runInParallel(ParallelJUnit4WithRulesExamples.OneTestDoesNotSatisfyExpectations.class);
+        
+        assertEquals("failure count", 1, result.getFailureCount());
+        Failure failure = result.getFailures().get(0);
+        assertEquals("failed test", "doesNotSatisfyExpectations", failure.getDescription().getMethodName());
+        assertTrue("should have failed with AssertionError but threw " + failure.getException(),
+                   failure.getException() instanceof AssertionError);
+    }
+    
+    public void testDiscardsTheContextOfEachTestWhenItHasFinished() {
+        Result result = JUnitCore.runClasses(ParallelJUnit4WithRulesExamples.RunsTestsOneAfterAnother.class);
+        
+        assertEquals("failure count", 1, result.getFailureCount());
+        assertEquals("failed test", "doesNotSatisfyExpectations", 
+                     result.getFailures().get(0).getDescription().getMethodName());
+    }
+    
+    public void testDiscardsTheContextOfATestThatCannotBeConstructed() {
+        Result result = JUnitCore.runClasses(ParallelJUnit4WithRulesExamples.FirstTestCannotBeConstructed.class);
+        
+        assertEquals("failures: " + result.getFailures(), 1, result.getFailureCount());
+        assertTrue("should have failed because the test could not be constructed but threw " + result.getFailures().get(0).getException(),
+                   result.getFailures().get(0).getException() instanceof IllegalStateException);
+    }
+    
+    public void testDoesNotPassExpectationsOfATestThatCannotBeConstructedToTheNextTest() {
+        Result result = JUnitCore.runClasses(ParallelJUnit4WithRulesExamples.FirstTestCannotBeConstructedAfterSettingExpectations.class);
+        
+        assertEquals("failures: " + result.getFailures(), 1, result.getFailureCount());
+        assertTrue("should have failed because the test could not be constructed but threw " + result.getFailures().get(0).getException(),
+                   result.getFailures().get(0).getException() instanceof IllegalStateException);
+    }
+    
+    public void testReportsMockObjectsWithTheSameNameCreatedWhileATestIsConstructed() {
+        Result result = JUnitCore.runClasses(ParallelJUnit4WithRulesExamples.CreatesTwoMockObjectsWithTheSameName.class);
+        
+        assertEquals("failures: " + result.getFailures(), 1, result.getFailureCount());
+        assertEquals("failure message", "a mock with name runnable already exists",
+                     result.getFailures().get(0).getMessage());
+    }
+    
+    public void testDiscardsTheContextOfATestThatFailsInAnEarlierRule() {
+        Result result = JUnitCore.runClasses(ParallelJUnit4WithRulesExamples.EarlierRuleFailsFirstTest.class);
+        
+        assertEquals("failures: " + result.getFailures(), 1, result.getFailureCount());
+        assertTrue("should have failed in the rule but threw " + result.getFailures().get(0).getException(),
+                   result.getFailures().get(0).getException() instanceof IllegalStateException);
+    }
+    
+    public void testDelegatesEveryPublicMethodOfMockeryToTheContextOfTheTest() {
+        for (Method method : Mockery.class.getDeclaredMethods()) {
+            int modifiers = method.getModifiers();
+            if (Modifier.isPublic(modifiers) && !Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+                try {
+                    ParallelJUnitRuleMockery.class.getDeclaredMethod(method.getName(), method.getParameterTypes());
+                }
+                catch (NoSuchMethodException e) {
+                    fail("ParallelJUnitRuleMockery should override " + method);
+                }
+            }
+        }
+    }
+    
+    private Result runInParallel(Class<?> testClass) {
+        return JUnitCore.runClasses(ParallelComputer.methods(), testClass);
+    }
+}
@@ -0,0 +1,196 @@
+package org.jmock.test.acceptance.junit4.testdata;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jmock.ExpectationsExt;
+import org.jmock.auto.Mock;
+import org.jmock.integration.junit4.ParallelJUnitRuleMockery;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.MethodRule;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+
+public class ParallelJUnit4WithRulesExamples {
+    public static class SatisfyExpectationsAtTheSameTime {
+        public static final int TEST_COUNT = 4;
+        
+        private static final ParallelJUnitRuleMockery mockery = new ParallelJUnitRuleMockery();
+        private static final CountDownLatch allTestsStarted = new CountDownLatch(TEST_COUNT);
+        
+        @Rule public final MethodRule context = mockery;
+        private final Runnable runnable = mockery.mock(Runnable.class, "runnable");
+        @Mock private Runnable autoMocked;
+        
+        @Test public void first() throws InterruptedException { expectAndRun(1); }
+        @Test public void second() throws InterruptedException { expectAndRun(2); }
+        @Test public void third() throws InterruptedException { expectAndRun(3); }
+        @Test public void fourth() throws InterruptedException { expectAndRun(4); }
+        
+        private void expectAndRun(final int times) throws InterruptedException {
+            mockery.checking(new ExpectationsExt() {protected void expect() throws Exception {
+                exactly(times).of (runnable).run();
+                oneOf (autoMocked).run();
+            }});
+            
+            allTestsStarted.countDown();
+            assertTrue("tests should run at the same time",
+                       allTestsStarted.await(10, TimeUnit.SECONDS));
+            
+            for (int i = 0; i < times; i++) {
+                runnable.run();
+            }
+            autoMocked.run();
+        }
+    }
+    
+    public static class OneTestDoesNotSatisfyExpectations {
+        public static final int TEST_COUNT = 2;
+        
+        private static final ParallelJUnitRuleMockery mockery = new ParallelJUnitRuleMockery();
+        private static final CountDownLatch allTestsStarted = new CountDownLatch(TEST_COUNT);
+        
+        @Rule public final MethodRule context = mockery;
+        private final Runnable runnable = mockery.mock(Runnable.class, "runnable");
+        
+        @Test
+        public void doesSatisfyExpectations() throws InterruptedException {
+            mockery.checking(new ExpectationsExt() {protected void expect() throws Exception {
+                oneOf (runnable).run();
+            }});
+            
+            waitForAllTestsToStart();
+            runnable.run();
+        }
+        
+        @Test
+        public void doesNotSatisfyExpectations() throws InterruptedException {
+            mockery.checking(new ExpectationsExt() {protected void expect() throws Exception {
+                oneOf (runnable).run();
+            }});
+            
+            waitForAllTestsToStart();
+            // Return without satisfying the expectation for runnable.run()
+        }
+        
+        private void waitForAllTestsToStart() throws InterruptedException {
+            allTestsStarted.countDown();
+            assertTrue("tests should run at the same time",
+                       allTestsStarted.await(10, TimeUnit.SECONDS));
+        }
+    }
+    
+    public static class FirstTestCannotBeConstructed {
+        private static final ParallelJUnitRuleMockery mockery = new ParallelJUnitRuleMockery();
+        private static final AtomicBoolean hasFailedConstruction = new AtomicBoolean(false);
+        
+        @Rule public final MethodRule context = mockery;
+        private final Runnable runnable = mockery.mock(Runnable.class, "runnable");
+        private final Object failsTheFirstTime = failTheFirstTime();
+        
+        @Test public void first() { expectAndRun(); }
+        @Test public void second() { expectAndRun(); }
+        
+        private void expectAndRun() {
+            mockery.checking(new ExpectationsExt() {protected void expect() throws Exception {
+                oneOf (runnable).run();
+            }});
+            
+            runnable.run();
+        }
+        
+        private static Object failTheFirstTime() {
+            if (hasFailedConstruction.compareAndSet(false, true)) {
+                throw new IllegalStateException("cannot construct test");
+            }
+            return new Object();
+        }
+    }
+    
+    public static class FirstTestCannotBeConstructedAfterSettingExpectations {
+        private static final ParallelJUnitRuleMockery mockery = new ParallelJUnitRuleMockery();
+        private static final AtomicBoolean hasFailedConstruction = new AtomicBoolean(false);
+        
+        @Rule public final MethodRule context = mockery;
+        
+        {
+            if (hasFailedConstruction.compareAndSet(false, true)) {
+                final Runnable unused = mockery.mock(Runnable.class, "unused");
+                mockery.checking(new ExpectationsExt() {protected void expect() throws Exception {
+                    oneOf (unused).run();
+                }});
+                throw new IllegalStateException("cannot construct test");
+            }
+        }
+        
+        @Test public void first() { }
+        @Test public void second() { }
+    }
+    
+    public static class CreatesTwoMockObjectsWithTheSameName {
+        private static final ParallelJUnitRuleMockery mockery = new ParallelJUnitRuleMockery();
+        
+        @Rule public final MethodRule context = mockery;
+        private final Runnable runnable = mockery.mock(Runnable.class, "runnable");
+        private final Runnable sameName = mockery.mock(Runnable.class, "runnable");
+        
+        @Test public void test() { }
+    }
+    
+    public static class EarlierRuleFailsFirstTest {
+        private static final ParallelJUnitRuleMockery mockery = new ParallelJUnitRuleMockery();
+        private static final AtomicBoolean hasFailedTest = new AtomicBoolean(false);
+        
+        @Rule public final MethodRule context = mockery;
+        @Rule public final MethodRule failsTheFirstTime = new MethodRule() {
+            public Statement apply(final Statement base, FrameworkMethod method, Object target) {
+                return new Statement() {
+                    @Override
+                    public void evaluate() throws Throwable {
+                        if (hasFailedTest.compareAndSet(false, true)) {
+                            throw new IllegalStateException("rule failed");
+                        }
+                        base.evaluate();
+                    }
+                };
+            }
+        };
+        private final Runnable runnable = mockery.mock(Runnable.class, "runnable");
+        
+        @Test public void first() { expectAndRun(); }
+        @Test public void second() { expectAndRun(); }
+        
+        private void expectAndRun() {
+            mockery.checking(new ExpectationsExt() {protected void expect() throws Exception {
+                oneOf (runnable).run();
+            }});
+            
+            runnable.run();
+        }
+    }
+    
+    public static class RunsTestsOneAfterAnother {
+        private static final ParallelJUnitRuleMockery mockery = new ParallelJUnitRuleMockery();
+        
+        @Rule public final MethodRule context = mockery;
+        private final Runnable runnable = mockery.mock(Runnable.class, "runnable");
+        
+        @Test
+        public void doesNotSatisfyExpectations() {
+            mockery.checking(new ExpectationsExt() {protected void expect() throws Exception {
+                oneOf (runnable).run();
+            }});
+        }
+        
+        @Test
+        public void doesNotSeeExpectationsOfOtherTests() {
+            mockery.checking(new ExpectationsExt() {protected void expect() throws Exception {
+                never (runnable).run();
+            }});
+        }
+    }
+}
@@ -5,8 +5,6 @@ package org.jmock.api;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
 
 import org.hamcrest.Description;
 import org.hamcrest.SelfDescribing;
@@ -23,19 +21,9 @@ public class Invocation implements SelfDescribing {
 
     private final Object invokedObject;
     private final Method invokedMethod;
-    private final Object[] parameterValues;
-
-    // A kludge but there doesn't seem to be a way to find this out through the reflection API.
-    private static final Map<Class<?>, Class<?>> BOX_TYPES = new HashMap<Class<?>, Class<?>>() {{
-        put(boolean.class, Boolean.class);
-        put(byte.class, Byte.class);
-        put(char.class, Character.class);
-        put(short.class, Short.class);
-        put(int.class, Integer.class);
-        put(long.class, Long.class);
-        put(float.class, Float.class);
-        put(double.class, Double.class);
-    }};
+    private final Class<?>[] parameterTypes;
+    private final long[] unboxedParameterValues;
+    private Object[] parameterValues;
 
     
     public Invocation(Object invoked, Method method, Object... parameterValues) {
@@ -44,6 +32,33 @@ public class Invocation implements SelfDescribing {
         this.parameterValues = (parameterValues == NO_PARAMETERS) 
             ? new Object[0]
             : parameterValues.clone();
+        this.parameterTypes = null;
+        this.unboxedParameterValues = null;
+    }
+    
+    /**
+     * Creates an Invocation whose parameters of type <code>int</code>, <code>long</code>
+     * and <code>double</code> are passed without boxing them.  They are boxed only if 
+     * they are asked for as objects.
+     * 
+     * The value of each such parameter is taken from <var>unboxedParameterValues</var>:
+     * <code>int</code>s widened to <code>long</code> and <code>double</code>s as returned
+     * by {@link Double#doubleToRawLongBits(double)}.  The values of the other parameters
+     * are taken from <var>parameterValues</var>, which can be null if there are none.
+     * 
+     * The arrays are not copied and must not be changed afterwards.  This constructor
+     * is intended to be called by imposterisers, not by tests.
+     * 
+     * @since 2.6.0
+     */
+    public Invocation(Object invoked, Method method, Class<?>[] parameterTypes, 
+                      Object[] parameterValues, long[] unboxedParameterValues) 
+    {
+        this.invokedObject = invoked;
+        this.invokedMethod = method;
+        this.parameterTypes = parameterTypes;
+        this.parameterValues = parameterValues;
+        this.unboxedParameterValues = unboxedParameterValues;
     }
     
     @Override
@@ -59,21 +74,21 @@ public class Invocation implements SelfDescribing {
     public boolean equals(Invocation other) {
         return other != null && invokedObject == other.invokedObject
             && invokedMethod.equals(other.invokedMethod)
-            && Arrays.equals(parameterValues, other.parameterValues);
+            && Arrays.equals(boxedParameterValues(), other.boxedParameterValues());
     }
 
     @Override
     public int hashCode() {
         return invokedObject.hashCode() 
              ^ invokedMethod.hashCode()
-             ^ Arrays.hashCode(parameterValues);
+             ^ Arrays.hashCode(boxedParameterValues());
     }
 
     public void describeTo(Description description) {
         description.appendText(invokedObject.toString());
         description.appendText(".");
         description.appendText(invokedMethod.getName());
-        description.appendValueList("(", ", ", ")", parameterValues);
+        description.appendValueList("(", ", ", ")", boxedParameterValues());
     }
 
     public Object getInvokedObject() {
@@ -85,15 +100,104 @@ public class Invocation implements SelfDescribing {
     }
 
     public int getParameterCount() {
-        return parameterValues.length;
+        return (parameterTypes != null) ? parameterTypes.length : parameterValues.length;
     }
 
     public Object getParameter(int i) {
+        if (isUnboxedParameter(i)) {
+            return boxedParameterValue(parameterValueArray(), i);
+        }
         return parameterValues[i];
     }
 
     public Object[] getParametersAsArray() {
-        return parameterValues.clone();
+        return boxedParameterValues().clone();
+    }
+    
+    /**
+     * Reports whether parameter <var>i</var> is of type <var>primitiveType</var>
+     * and was passed without boxing it.  If so, its value can be compared with
+     * {@link #getUnboxedParameterValue(int)} without boxing it.
+     * 
+     * @since 2.6.0
+     */
+    public boolean hasUnboxedParameter(int i, Class<?> primitiveType) {
+        return isUnboxedParameter(i) && parameterTypes[i] == primitiveType;
+    }
+    
+    /**
+     * Returns the value of parameter <var>i</var>, which must have been passed 
+     * without boxing it, in the form described for 
+     * {@link #Invocation(Object, Method, Class[], Object[], long[])}.
+     * 
+     * @since 2.6.0
+     */
+    public long getUnboxedParameterValue(int i) {
+        if (!isUnboxedParameter(i)) {
+            throw new IllegalArgumentException("parameter " + i + " was not passed unboxed");
+        }
+        return unboxedParameterValues[i];
+    }
+    
+    /**
+     * The types of parameter that imposterisers can pass without boxing them.
+     * 
+     * @since 2.6.0
+     */
+    public static boolean canPassUnboxed(Class<?> parameterType) {
+        return parameterType == int.class || parameterType == long.class || parameterType == double.class;
+    }
+    
+    private boolean isUnboxedParameter(int i) {
+        return unboxedParameterValues != null && canPassUnboxed(parameterTypes[i]);
+    }
+    
+    /*
+     * Races between threads boxing the parameters at the same time are benign:
+     * each boxes the same values.
+     */
+    private Object[] boxedParameterValues() {
+        if (unboxedParameterValues == null) {
+            return parameterValues;
+        }
+        
+        Object[] values = parameterValueArray();
+        for (int i = 0; i < values.length; i++) {
+            if (isUnboxedParameter(i)) {
+                boxedParameterValue(values, i);
+            }
+        }
+        return values;
+    }
+    
+    private Object[] parameterValueArray() {
+        Object[] values = parameterValues;
+        if (values == null) {
+            values = new Object[parameterTypes.length];
+            parameterValues = values;
+        }
+        return values;
+    }
+    
+    private Object boxedParameterValue(Object[] values, int i) {
+        Object value = values[i];
+        if (value == null) {
+            value = box(parameterTypes[i], unboxedParameterValues[i]);
+            values[i] = value;
+        }
+        return value;
+    }
+    
+    private static Object box(Class<?> primitiveType, long value) {
+        if (primitiveType == int.class) {
+            return Integer.valueOf((int)value);
+        }
+        else if (primitiveType == long.class) {
+            return Long.valueOf(value);
+        }
+        else {
+            return Double.valueOf(Double.longBitsToDouble(value));
+        }
     }
 
     public Object applyTo(Object target) throws Throwable {
@@ -111,26 +215,45 @@ public class Invocation implements SelfDescribing {
             failIfReturnTypeIsNotNull(value);
         }
         else if (value == null) {
-            failIfReturnTypeIsPrimitive();
+            failIfReturnTypeIsPrimitive(returnType);
         }
         else {
             Class<?> valueType = value.getClass();
-            if (!isCompatible(returnType, valueType)) {
+            if (!boxedType(returnType).isAssignableFrom(valueType)) {
                 reportTypeError(returnType, valueType);
             }
         }
     }
-
-    private boolean isCompatible(Class<?> returnType, Class<?> valueType) {
-        if (returnType.isPrimitive()) {
-            // The reflection API doesn't reflect Java's auto-boxing.
-            return isBoxedType(returnType, valueType);
+    
+    // The reflection API doesn't reflect Java's auto-boxing.
+    private static Class<?> boxedType(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        else if (type == int.class) {
+            return Integer.class;
+        }
+        else if (type == long.class) {
+            return Long.class;
+        }
+        else if (type == boolean.class) {
+            return Boolean.class;
+        }
+        else if (type == double.class) {
+            return Double.class;
+        }
+        else if (type == float.class) {
+            return Float.class;
+        }
+        else if (type == char.class) {
+            return Character.class;
+        }
+        else if (type == short.class) {
+            return Short.class;
+        }
+        else {
+            return Byte.class;
         }
-        return returnType.isAssignableFrom(valueType);
-    }
-
-    private boolean isBoxedType(Class<?> primitiveType, Class<?> referenceType) {
-        return BOX_TYPES.get(primitiveType) == referenceType;
     }
 
     private void failIfReturnTypeIsNotNull(final Object result) {
@@ -139,8 +262,7 @@ public class Invocation implements SelfDescribing {
         }
     }
 
-    private void failIfReturnTypeIsPrimitive() {
-        Class<?> returnType = invokedMethod.getReturnType();
+    private void failIfReturnTypeIsPrimitive(Class<?> returnType) {
         if (returnType.isPrimitive()) {
             throw new IllegalStateException(
                 "tried to return null value from method returning " + returnType.getName());
@@ -0,0 +1,70 @@
+package org.jmock.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.jmock.api.Invocation;
+import org.jmock.internal.Cardinality;
+import org.jmock.internal.InvocationDispatcher;
+import org.jmock.internal.InvocationExpectation;
+import org.jmock.internal.matcher.AllParametersMatcher;
+import org.jmock.internal.matcher.MockObjectMatcher;
+import org.jmock.lib.action.ReturnValueAction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link InvocationDispatcher#dispatch(Invocation)} of an invocation 
+ * that is matched by the last of the dispatcher's expectations.
+ * 
+ * All the expectations are for the same method of the same mock object, and differ
+ * only in their parameters, so every one of them has to be tried.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+    public interface Collaborator {
+        String lookUp(int key);
+    }
+    
+    @Param({"1", "100", "10000"})
+    public int expectationCount;
+    
+    @Param({"false", "true"})
+    public boolean cachesMatches;
+    
+    private InvocationDispatcher dispatcher;
+    private Invocation invocation;
+    
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        final Object mockObject = new Object();
+        final Method method = Collaborator.class.getMethod("lookUp", int.class);
+        
+        dispatcher = new InvocationDispatcher();
+        dispatcher.setCachesMatches(cachesMatches);
+        for (int i = 0; i < expectationCount; i++) {
+            InvocationExpectation expectation = new InvocationExpectation();
+            expectation.setCardinality(Cardinality.ALLOWING);
+            expectation.setObjectMatcher(new MockObjectMatcher(mockObject));
+            expectation.setMethod(method);
+            expectation.setParametersMatcher(new AllParametersMatcher(new Object[]{i}));
+            expectation.setAction(new ReturnValueAction("result " + i));
+            dispatcher.add(expectation);
+        }
+        
+        invocation = new Invocation(mockObject, method, expectationCount - 1);
+    }
+    
+    @Benchmark
+    public Object dispatch() throws Throwable {
+        return dispatcher.dispatch(invocation);
+    }
+}
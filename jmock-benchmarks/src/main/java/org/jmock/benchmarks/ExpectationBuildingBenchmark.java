@@ -0,0 +1,76 @@
+package org.jmock.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jmock.ExpectationsExt;
+import org.jmock.Mockery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures defining an expectation with <code>checking(new ExpectationsExt() {...})</code>
+ * whose parameters are all given by <code>with</code> clauses, for methods with
+ * different numbers of parameters, and for comparison one whose parameters are
+ * all given as values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExpectationBuildingBenchmark {
+    public interface Collaborator {
+        void receive(String a);
+        void receive(String a, int b, long c, double d);
+        void receive(String a, int b, long c, double d, String e, int f, long g, double h);
+    }
+    
+    @Param({"1", "4", "8"})
+    public int withClauseCount;
+    
+    private Mockery context;
+    private Collaborator collaborator;
+    
+    @Setup
+    public void setUp() {
+        context = new Mockery();
+        collaborator = context.mock(Collaborator.class);
+    }
+    
+    @Benchmark
+    public Mockery checkingWithClauses() {
+        context.reset();
+        switch (withClauseCount) {
+        case 1:
+            context.checking(new ExpectationsExt() {protected void expect() throws Exception {
+                allowing (collaborator).receive(with("a"));
+            }});
+            break;
+        case 4:
+            context.checking(new ExpectationsExt() {protected void expect() throws Exception {
+                allowing (collaborator).receive(with("a"), with(1), with(2L), with(3.0));
+            }});
+            break;
+        default:
+            context.checking(new ExpectationsExt() {protected void expect() throws Exception {
+                allowing (collaborator).receive(with("a"), with(1), with(2L), with(3.0), 
+                                                with("e"), with(5), with(6L), with(7.0));
+            }});
+            break;
+        }
+        return context;
+    }
+    
+    @Benchmark
+    public Mockery checkingValues() {
+        context.reset();
+        context.checking(new ExpectationsExt() {protected void expect() throws Exception {
+            allowing (collaborator).receive("a", 1, 2L, 3.0, "e", 5, 6L, 7.0);
+        }});
+        return context;
+    }
+}
@@ -0,0 +1,63 @@
+package org.jmock.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jmock.Mockery;
+import org.jmock.api.Imposteriser;
+import org.jmock.lib.JavaReflectionImposteriser;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures creating a mock object with {@link Mockery#mock(Class)}.
+ * 
+ * Each mock object is created in a new Mockery, as it would be by each test 
+ * in a test class.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MockCreationBenchmark {
+    public interface Collaborator {
+        void notify(String event);
+        int count(String key);
+    }
+    
+    public static class CollaboratorClass {
+        public void notify(String event) {}
+        public int count(String key) { return 0; }
+    }
+    
+    @Param({"reflection", "class"})
+    public String imposteriserName;
+    
+    private Imposteriser imposteriser;
+    
+    @Setup
+    public void setUp() {
+        imposteriser = imposteriserName.equals("class") 
+                     ? ClassImposteriser.INSTANCE 
+                     : JavaReflectionImposteriser.INSTANCE;
+    }
+    
+    @Benchmark
+    public Object mockAnInterface() {
+        Mockery context = new Mockery();
+        context.setImposteriser(imposteriser);
+        return context.mock(Collaborator.class);
+    }
+    
+    @Benchmark
+    public Object mockAClass() {
+        Mockery context = new Mockery();
+        context.setImposteriser(ClassImposteriser.INSTANCE);
+        return context.mock(CollaboratorClass.class);
+    }
+}
@@ -0,0 +1,76 @@
+package org.jmock.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jmock.ExpectationsExt;
+import org.jmock.Mockery;
+import org.jmock.api.ThreadingPolicy;
+import org.jmock.lib.concurrent.StripedSynchroniser;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures invoking mock objects of one Mockery from several threads at once,
+ * with the threading policies that allow it.
+ * 
+ * Each thread invokes its own mock object, so the benchmark shows how much the
+ * threads contend for the policy's locks rather than for the same expectation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class SynchroniserContentionBenchmark {
+    public interface Collaborator {
+        int count(String key);
+    }
+    
+    @Param({"synchroniser", "striped"})
+    public String policyName;
+    
+    private Collaborator[] collaborators;
+    
+    @Setup
+    public void setUp() {
+        final ThreadingPolicy policy = policyName.equals("striped") 
+                                     ? new StripedSynchroniser() 
+                                     : new Synchroniser();
+        final Mockery context = new Mockery();
+        context.setThreadingPolicy(policy);
+        
+        collaborators = new Collaborator[4];
+        for (int i = 0; i < collaborators.length; i++) {
+            final Collaborator collaborator = context.mock(Collaborator.class, "collaborator" + i);
+            context.checking(new ExpectationsExt() {protected void expect() throws Exception {
+                allowing (collaborator).count("key"); will(returnValue(1));
+            }});
+            collaborators[i] = collaborator;
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class ThreadIndex {
+        private static int nextIndex = 0;
+        public int index;
+        
+        @Setup
+        public void setUp() {
+            synchronized (ThreadIndex.class) {
+                index = nextIndex++ % 4;
+            }
+        }
+    }
+    
+    @Benchmark
+    public int invokeMockObject(ThreadIndex thread) {
+        return collaborators[thread.index].count("key");
+    }
+}
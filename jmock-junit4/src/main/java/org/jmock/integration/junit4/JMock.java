@@ -24,8 +24,7 @@ public class JMock extends BlockJUnit4ClassRunner {
 
     public JMock(Class<?> testClass) throws InitializationError {
         super(testClass);
-        mockeryField = findMockeryField(testClass);
-        mockeryField.setAccessible(true);
+        mockeryField = AllDeclaredFields.accessibleCopyOf(findMockeryField(testClass));
     }
     
     @Override
@@ -49,8 +48,13 @@ public class JMock extends BlockJUnit4ClassRunner {
         return new Statement() {
             @Override
             public void evaluate() throws Throwable {
-                next.evaluate();
-                assertMockeryIsSatisfied(test);
+                try {
+                    next.evaluate();
+                    assertMockeryIsSatisfied(test);
+                }
+                finally {
+                    finishTest(test);
+                }
             }
         };
     }
@@ -59,6 +63,13 @@ public class JMock extends BlockJUnit4ClassRunner {
         mockeryOf(test).assertIsSatisfied();
     }
 
+    private void finishTest(Object test) {
+        Mockery mockery = mockeryOf(test);
+        if (mockery instanceof ParallelJUnitRuleMockery) {
+            ((ParallelJUnitRuleMockery)mockery).finishTest();
+        }
+    }
+
     protected Mockery mockeryOf(Object test) {
         try {
             Mockery mockery = (Mockery)mockeryField.get(test);
@@ -53,7 +53,7 @@ public class JUnitRuleMockery extends JUnit4Mockery implements MethodRule {
             private void prepare(final Object target) {
                 List<Field> allFields = AllDeclaredFields.in(target.getClass());
                 assertOnlyOneJMockContextIn(allFields);
-                fillInAutoMocks(target, allFields);
+                fillInAutoMocks(target);
             }
 
             private void assertOnlyOneJMockContextIn(List<Field> allFields) {
@@ -69,8 +69,8 @@ public class JUnitRuleMockery extends JUnit4Mockery implements MethodRule {
                 }
             }
 
-            private void fillInAutoMocks(final Object target, List<Field> allFields) {
-                mockomatic.fillIn(target, allFields);
+            private void fillInAutoMocks(final Object target) {
+                mockomatic.fillIn(target);
             }
         };
     }
@@ -0,0 +1,337 @@
+package org.jmock.integration.junit4;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hamcrest.Description;
+import org.jmock.Mockery;
+import org.jmock.Sequence;
+import org.jmock.States;
+import org.jmock.TypedStates;
+import org.jmock.api.Expectation;
+import org.jmock.api.ExpectationErrorTranslator;
+import org.jmock.api.Imposteriser;
+import org.jmock.api.MockObjectNamingScheme;
+import org.jmock.api.ThreadingPolicy;
+import org.jmock.auto.internal.Mockomatic;
+import org.jmock.internal.ExpectationBuilder;
+import org.junit.rules.MethodRule;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+
+/**
+ * A <code>ParallelJUnitRuleMockery</code> is a JUnit Rule that can be shared by
+ * test methods that JUnit runs in parallel, for example with the
+ * <code>ParallelComputer</code> or Surefire's <code>parallel="methods"</code>.
+ *
+ * Each test gets its own context, with its own expectations, mock object names and
+ * record of invocations, so that tests running at the same time cannot see each
+ * other's mock objects.  The context of a test belongs to the thread that runs the
+ * test: it is created when the test first uses the mockery, which may be while the
+ * test's fields are initialised, and it is discarded when the test has finished.
+ * Mock objects that a test creates while it is being constructed must be kept in
+ * its fields: when the test starts, it takes the context that holds those mock
+ * objects, and any context left behind by a test that could not be constructed,
+ * or that failed in an earlier rule, is discarded.
+ * Mock objects stay in the context of the test that created them, so the object
+ * under test can call them from other threads.  For example,
+ *
+ * <pre>public class ATestThatRunsInParallel {
+ *  private static final ParallelJUnitRuleMockery mockery = new ParallelJUnitRuleMockery();
+ *  @Rule public final MethodRule context = mockery;
+ *  private final Runnable runnable = mockery.mock(Runnable.class);
+ *
+ *  @Test
+ *  public void doesSatisfyExpectations() {
+ *    mockery.checking(new ExpectationsExt() {protected void expect() throws Exception{
+ *      oneOf (runnable).run();
+ *    }});
+ *
+ *    runnable.run();
+ *  }
+ *}</pre>
+ *
+ * Settings, such as the imposteriser or threading policy, apply to the context of
+ * the test that changes them.  The imposterisers and naming schemes that jMock
+ * provides are thread-safe and so can be shared by all the tests.  To use other
+ * defaults for every test, override {@link #newContext()}.
+ */
+public class ParallelJUnitRuleMockery extends Mockery implements MethodRule {
+    private final ThreadLocal<List<TestContext>> contexts = new ThreadLocal<List<TestContext>>();
+    private final Mockomatic mockomatic = new Mockomatic(this);
+
+    public Statement apply(final Statement base, FrameworkMethod method, final Object target) {
+        // taken off the thread now, so that they cannot leak into the next test if
+        // a rule applied before this one fails without evaluating this statement
+        final List<TestContext> constructed = contexts.get();
+        contexts.remove();
+        
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    startTest(contextClaimedBy(target, constructed));
+                    mockomatic.fillIn(target);
+                    base.evaluate();
+                    assertIsSatisfied();
+                }
+                finally {
+                    finishTest();
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates the context of a test.
+     *
+     * Called on the thread that runs the test the first time that the test uses
+     * the mockery, or when the test starts if it did not use the mockery while it
+     * was being constructed.
+     */
+    protected Mockery newContext() {
+        return new JUnit4Mockery();
+    }
+
+    /**
+     * Discards the context of the test that the current thread has been running.
+     */
+    void finishTest() {
+        contexts.remove();
+    }
+
+    private void startTest(TestContext context) {
+        context.isRunning = true;
+        List<TestContext> running = new ArrayList<TestContext>(1);
+        running.add(context);
+        contexts.set(running);
+    }
+
+    /*
+     * The contexts used by this thread since its last test finished belong to the
+     * test that is starting and to any tests that could not be constructed.  The
+     * test's own context is the one that created the mock objects held by its
+     * fields, or the last one if that created no mock objects at all.  If the test
+     * holds mock objects of two contexts, it gave two of them the same name.
+     */
+    private TestContext contextClaimedBy(Object target, List<TestContext> constructed) {
+        if (constructed == null) {
+            return new TestContext(newContext(), null);
+        }
+        
+        final Map<Object, Boolean> fieldValues = fieldValuesOf(target);
+        TestContext claimed = null;
+        for (TestContext context : constructed) {
+            if (context.createdAnyOf(fieldValues)) {
+                if (claimed != null) {
+                    throw context.nameClash;
+                }
+                claimed = context;
+            }
+        }
+        
+        if (claimed == null) {
+            final TestContext last = constructed.get(constructed.size() - 1);
+            claimed = last.mocks.isEmpty() ? last : new TestContext(newContext(), null);
+        }
+        return claimed;
+    }
+
+    private static Map<Object, Boolean> fieldValuesOf(Object target) {
+        final Map<Object, Boolean> values = new IdentityHashMap<Object, Boolean>();
+        for (Class<?> c = target.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    field.setAccessible(true);
+                    try {
+                        values.put(field.get(target), Boolean.TRUE);
+                    }
+                    catch (IllegalAccessException e) {
+                        throw new IllegalStateException("cannot get value of field " + field.getName(), e);
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    private Mockery context() {
+        return testContext().mockery;
+    }
+
+    private TestContext testContext() {
+        List<TestContext> used = contexts.get();
+        if (used == null) {
+            used = new ArrayList<TestContext>(1);
+            used.add(new TestContext(newContext(), null));
+            contexts.set(used);
+        }
+        return used.get(used.size() - 1);
+    }
+
+    private <T> T newMock(Class<T> typeToMock, String name, boolean isNamed) {
+        final TestContext context = testContext();
+        try {
+            return context.newMock(typeToMock, name, isNamed);
+        }
+        catch (IllegalArgumentException e) {
+            if (context.isRunning) {
+                throw e;
+            }
+            return newMockInNewContext(typeToMock, name, isNamed, e);
+        }
+    }
+
+    /*
+     * While tests are being constructed, a mock object that cannot be created in the
+     * current context but can be created in a new one has a name that is already taken,
+     * by a test that could not be constructed or by the test being constructed.  Which
+     * of the two is only known when the test starts.
+     */
+    private <T> T newMockInNewContext(Class<T> typeToMock, String name, boolean isNamed, IllegalArgumentException nameClash) {
+        final TestContext context = new TestContext(newContext(), nameClash);
+        final T mock;
+        try {
+            mock = context.newMock(typeToMock, name, isNamed);
+        }
+        catch (IllegalArgumentException e) {
+            // not caused by the name
+            throw nameClash;
+        }
+        contexts.get().add(context);
+        return mock;
+    }
+
+    private static class TestContext {
+        public final Mockery mockery;
+        public final IllegalArgumentException nameClash;
+        public final Map<Object, Boolean> mocks = new IdentityHashMap<Object, Boolean>();
+        public boolean isRunning = false;
+
+        public TestContext(Mockery mockery, IllegalArgumentException nameClash) {
+            this.mockery = mockery;
+            this.nameClash = nameClash;
+        }
+
+        public <T> T newMock(Class<T> typeToMock, String name, boolean isNamed) {
+            final T mock = isNamed ? mockery.mock(typeToMock, name) : mockery.mock(typeToMock);
+            if (!isRunning) {
+                mocks.put(mock, Boolean.TRUE);
+            }
+            return mock;
+        }
+
+        public boolean createdAnyOf(Map<Object, Boolean> objects) {
+            for (Object mock : mocks.keySet()) {
+                if (objects.containsKey(mock)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public void setDefaultResultForType(Class<?> type, Object result) {
+        context().setDefaultResultForType(type, result);
+    }
+
+    @Override
+    public void setImposteriser(Imposteriser imposteriser) {
+        context().setImposteriser(imposteriser);
+    }
+
+    @Override
+    public void setInvocationHistoryLimit(int limit) {
+        context().setInvocationHistoryLimit(limit);
+    }
+
+    @Override
+    public void setCachesMatches(boolean cachesMatches) {
+        context().setCachesMatches(cachesMatches);
+    }
+
+    @Override
+    public void setDefersVerification(boolean defersVerification) {
+        context().setDefersVerification(defersVerification);
+    }
+
+    @Override
+    public void setNamingScheme(MockObjectNamingScheme namingScheme) {
+        context().setNamingScheme(namingScheme);
+    }
+
+    @Override
+    public void setExpectationErrorTranslator(ExpectationErrorTranslator expectationErrorTranslator) {
+        context().setExpectationErrorTranslator(expectationErrorTranslator);
+    }
+
+    @Override
+    public void setThreadingPolicy(ThreadingPolicy threadingPolicy) {
+        context().setThreadingPolicy(threadingPolicy);
+    }
+
+    @Override
+    public <T> T mock(Class<T> typeToMock) {
+        return newMock(typeToMock, null, false);
+    }
+
+    @Override
+    public <T> T mock(Class<T> typeToMock, String name) {
+        return newMock(typeToMock, name, true);
+    }
+
+    @Override
+    public Sequence sequence(String name) {
+        return context().sequence(name);
+    }
+
+    @Override
+    public States states(String name) {
+        return context().states(name);
+    }
+
+    @Override
+    public <S extends Enum<S>> TypedStates<S> states(String name, Class<S> stateType) {
+        return context().states(name, stateType);
+    }
+
+    @Override
+    public void checking(ExpectationBuilder expectations) {
+        context().checking(expectations);
+    }
+
+    @Override
+    public void addExpectation(Expectation expectation) {
+        context().addExpectation(expectation);
+    }
+
+    @Override
+    public void assertIsSatisfied() {
+        context().assertIsSatisfied();
+    }
+
+    @Override
+    public void waitForSatisfaction() {
+        context().waitForSatisfaction();
+    }
+
+    @Override
+    public void reset() {
+        context().reset();
+    }
+
+    @Override
+    public void assertIsSatisfiedAndReset() {
+        context().assertIsSatisfiedAndReset();
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        context().describeTo(description);
+    }
+}
@@ -6,13 +6,10 @@ import org.hamcrest.Matcher;
 import org.hamcrest.core.*;
 import org.jmock.api.Action;
 import org.jmock.internal.*;
+import org.jmock.internal.matcher.TypedMatcher;
 import org.jmock.lib.action.*;
-import org.jmock.lib.legacy.ClassImposteriser;
 import org.jmock.syntax.*;
-import org.objenesis.ObjenesisHelper;
 
-import java.lang.reflect.Array;
-import java.lang.reflect.Modifier;
 import java.util.*;
 
 /**
@@ -32,7 +29,6 @@ public abstract class ExpectationsExt implements ExpectationBuilder,
     private boolean isBuildNow = false;
 
     private List<Object> objectsFromWith = new ArrayList<Object>();
-    private int lastVerifiedPosInObjects = -1;
     private int currentPosIsObjectsFromWith = -1;
 
     private Queue<Object> stubValuesGeneratedEarlier = new ArrayDeque<Object>();
@@ -50,13 +46,11 @@ public abstract class ExpectationsExt implements ExpectationBuilder,
                 expect();
                 return; // all is right
             } catch (ClassCastException e) {
-                lastVerifiedPosInObjects++;
-                Object objectOfExpectedClass = createObjectOfExpectedClass(e);
-                if (lastVerifiedPosInObjects < objectsFromWith.size()) {
-                    objectsFromWith.set(lastVerifiedPosInObjects, objectOfExpectedClass);
-                } else {
-                    objectsFromWith.add(objectOfExpectedClass);
+                if (currentPosIsObjectsFromWith < 0) {
+                    throw e;
                 }
+                // the cast of the value returned by the latest with() failed
+                objectsFromWith.set(currentPosIsObjectsFromWith, createObjectOfExpectedClass(e));
                 currentPosIsObjectsFromWith = -1;
                 currentPosInBuilders = -1;
             } catch (InvocationExpectationBuilder.DuplicatePrimitiveValuesFromWithAndFromActualParametersException e) {
@@ -85,26 +79,39 @@ public abstract class ExpectationsExt implements ExpectationBuilder,
         final String className = message.substring(pos);
 
         try {
-            Class<?> clazz = Class.forName(className);
-            if (clazz.isArray()) {
-                return Array.newInstance(clazz.getComponentType(), 0);
-            } else if (Modifier.isAbstract(clazz.getModifiers()) || Modifier.isInterface(clazz.getModifiers())) {
-                return ClassImposteriser.INSTANCE.imposterise(new ReturnDefaultValueAction(), clazz); // ReturnDefaultValueAction - bad hashCode - always returns 0
-            } else {
-                return ObjenesisHelper.newInstance(clazz);
-            }
+            return createObjectOfExpectedClass(StubValueFactory.INSTANCE.classNamed(className));
         } catch (ClassNotFoundException e1) {
             throw new RuntimeException(e1);
         }
     }
 
-    private Object getObjectFromWith() {
+    private Object createObjectOfExpectedClass(Class<?> clazz) {
+        return StubValueFactory.INSTANCE.newStubValue(clazz);
+    }
+
+    /**
+     * Creates the first stub value for a with() clause.  If the type of the parameter
+     * is known in advance the stub is created with that type, so that the expectation
+     * block does not have to be run again to find it out from a ClassCastException.
+     */
+    private Object createFirstObjectFromWith(Class<?> expectedType) {
+        if (expectedType == null) {
+            return new IncompatibleClass();
+        }
+        try {
+            return createObjectOfExpectedClass(BoxingUtils.boxedType(expectedType));
+        } catch (RuntimeException e) {
+            return new IncompatibleClass(); // fall back to finding the type out from a ClassCastException
+        }
+    }
+
+    private Object getObjectFromWith(Class<?> expectedType) {
         if (currentBuilder().getBuildPhase() == InvocationExpectationBuilder.BuildPhase.SEARCH_FOR_VALUES) {
             return stubValuesGeneratedEarlier.poll();
         } else if (currentBuilder().getBuildPhase() == InvocationExpectationBuilder.BuildPhase.SEARCH_FOR_ACCESSIBLE_TYPES) {
             currentPosIsObjectsFromWith++;
             if (objectsFromWith.size() == currentPosIsObjectsFromWith) {
-                objectsFromWith.add(new IncompatibleClass());
+                objectsFromWith.add(createFirstObjectFromWith(expectedType));
             }
             return objectsFromWith.get(currentPosIsObjectsFromWith);
         } else {
@@ -120,35 +127,35 @@ public abstract class ExpectationsExt implements ExpectationBuilder,
 
     protected final WithClause with = new WithClause() {
         public boolean booleanIs(Matcher<?> matcher) {
-            return (Boolean) with(matcher);// ClassCastException is expected here
+            return (Boolean) captureParameter(matcher, Boolean.class);
         }
 
         public byte byteIs(Matcher<?> matcher) {
-            return (Byte) with(matcher); // ClassCastException is expected here
+            return (Byte) captureParameter(matcher, Byte.class);
         }
 
         public char charIs(Matcher<?> matcher) {
-            return (Character) with(matcher);// ClassCastException is expected here
+            return (Character) captureParameter(matcher, Character.class);
         }
 
         public double doubleIs(Matcher<?> matcher) {
-            return (Double) with(matcher);// ClassCastException is expected here
+            return (Double) captureParameter(matcher, Double.class);
         }
 
         public float floatIs(Matcher<?> matcher) {
-            return (Float) with(matcher);// ClassCastException is expected here
+            return (Float) captureParameter(matcher, Float.class);
         }
 
         public int intIs(Matcher<?> matcher) {
-            return (Integer) with(matcher);// ClassCastException is expected here
+            return (Integer) captureParameter(matcher, Integer.class);
         }
 
         public long longIs(Matcher<?> matcher) {
-            return (Long) with(matcher);// ClassCastException is expected here
+            return (Long) captureParameter(matcher, Long.class);
         }
 
         public short shortIs(Matcher<?> matcher) {
-            return (Short) with(matcher);// ClassCastException is expected here
+            return (Short) captureParameter(matcher, Short.class);
         }
 
         @SuppressWarnings({"unchecked"})
@@ -319,6 +326,24 @@ public abstract class ExpectationsExt implements ExpectationBuilder,
         return atLeast(0).of(mockObject);
     }
 
+    /**
+     * Allows any number of invocations, like {@link #allowing(Object) allowing}, and
+     * declares that the expectation is a pure stub: it is for one method, always
+     * returns the same value and is not ordered and has no side effects.  For
+     * example, <code>stubbing(config).getTimeout(); will(returnValue(30));</code>
+     * 
+     * Pure stubs are answered from any thread and without taking any lock, and
+     * are not recorded in the invocations reported when a test fails.  A pure stub
+     * declared after another expectation that might match the same invocations is
+     * dispatched in order like any other expectation instead.
+     */
+    public <T> T stubbing(T mockObject) {
+        checkWeBuildingNow();
+        T capturingImposter = allowing(mockObject);
+        currentBuilder().setPureStub();
+        return capturingImposter;
+    }
+
     public <T> T ignoring(T mockObject) {
         checkWeBuildingNow();
         return allowing(mockObject);
@@ -339,8 +364,22 @@ public abstract class ExpectationsExt implements ExpectationBuilder,
      */
     @SuppressWarnings({"unchecked"})
     public <T> T with(Matcher<T> matcher) {
+        final Class<?> expectedType = matcher instanceof TypedMatcher ? ((TypedMatcher<?>) matcher).getExpectedType() : null;
+        return (T) captureParameter(matcher, expectedType);
+    }
+
+    /**
+     * Like with.is, but states the type of the parameter so that it does not have
+     * to be found out by running the expectations again.
+     */
+    @SuppressWarnings({"unchecked"})
+    public <T> T with(Class<T> type, Matcher<?> matcher) {
+        return (T) captureParameter(matcher, type);
+    }
+
+    private Object captureParameter(Matcher<?> matcher, Class<?> expectedType) {
         checkWeBuildingNow();
-        final T objectFromWith = (T) getObjectFromWith();
+        final Object objectFromWith = getObjectFromWith(expectedType);
         if (objectFromWith == null) {
             throw new AssertionError("Internal jmock error: zero was returned from getObjectFromWith");
         }
@@ -367,26 +406,37 @@ public abstract class ExpectationsExt implements ExpectationBuilder,
      */
 
     public static <T> Matcher<T> equal(T value) {
-        return new IsEqual<T>(value);
+        return typedByValue(value, new IsEqual<T>(value));
     }
 
     public static <T> Matcher<T> same(T value) {
-        return new IsSame<T>(value);
+        return typedByValue(value, new IsSame<T>(value));
     }
 
     /**
      * Matches any value than can be assigned to <i>type</i> (instance of type or <i>null</i>)
      */
     public static <T> Matcher<T> any(Class<T> type) {
-        return CoreMatchers.anyOf(CoreMatchers.nullValue(type), CoreMatchers.isA(type));
+        return new TypedMatcher<T>(type, CoreMatchers.anyOf(CoreMatchers.nullValue(type), CoreMatchers.isA(type)));
     }
 
-    public static <T> Matcher<T> aNull(@SuppressWarnings("unused") Class<T> type) {
-        return new IsNull<T>();
+    public static <T> Matcher<T> aNull(Class<T> type) {
+        return new TypedMatcher<T>(type, new IsNull<T>());
     }
 
-    public static <T> Matcher<T> aNonNull(@SuppressWarnings("unused") Class<T> type) {
-        return CoreMatchers.isA(type);
+    public static <T> Matcher<T> aNonNull(Class<T> type) {
+        return new TypedMatcher<T>(type, CoreMatchers.isA(type));
+    }
+
+    /*
+     * Only boxed primitives are typed by their value: a stub value of an arbitrary
+     * value's class might not survive being hashed while the expectation is captured.
+     */
+    private static <T> Matcher<T> typedByValue(T value, Matcher<T> matcher) {
+        if (value != null && BoxingUtils.isWrapperType(value.getClass())) {
+            return new TypedMatcher<T>(value.getClass(), matcher);
+        }
+        return matcher;
     }
 
     public static <T> Matcher<T> anything() {
@@ -1,8 +1,7 @@
 package org.jmock;
 
-import java.util.ArrayList;
+import java.lang.reflect.Method;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import org.hamcrest.Description;
@@ -16,19 +15,26 @@ import org.jmock.api.Invokable;
 import org.jmock.api.MockObjectNamingScheme;
 import org.jmock.api.ThreadingPolicy;
 import org.jmock.internal.CaptureControl;
+import org.jmock.internal.EnumStateMachine;
 import org.jmock.internal.ExpectationBuilder;
 import org.jmock.internal.ExpectationCapture;
 import org.jmock.internal.InvocationDispatcher;
 import org.jmock.internal.InvocationDiverter;
+import org.jmock.internal.InvocationHistory;
+import org.jmock.internal.InvocationLog;
 import org.jmock.internal.InvocationToExpectationTranslator;
 import org.jmock.internal.NamedSequence;
+import org.jmock.internal.ObjectMethod;
 import org.jmock.internal.ObjectMethodExpectationBouncer;
 import org.jmock.internal.ProxiedObjectIdentity;
 import org.jmock.internal.ReturnDefaultValueAction;
 import org.jmock.internal.SingleThreadedPolicy;
+import org.jmock.internal.StubTable;
+import org.jmock.internal.TruncatingDescription;
 import org.jmock.lib.CamelCaseNamingScheme;
 import org.jmock.lib.IdentityExpectationErrorTranslator;
 import org.jmock.lib.JavaReflectionImposteriser;
+import org.jmock.lib.concurrent.StripedSynchroniser;
 import org.jmock.lib.concurrent.Synchroniser;
 
 
@@ -44,6 +50,9 @@ import org.jmock.lib.concurrent.Synchroniser;
  * @author named by Ivan Moore.
  */
 public class Mockery implements SelfDescribing {
+    private static final long DEFERRED_REPLAY_INTERVAL_MS = 10;
+    private static final Object MUST_DISPATCH = new Object();
+    
     private Set<String> mockNames = new HashSet<String>();
     private Imposteriser imposteriser = JavaReflectionImposteriser.INSTANCE;
     private ExpectationErrorTranslator expectationErrorTranslator = IdentityExpectationErrorTranslator.INSTANCE;
@@ -53,10 +62,12 @@ public class Mockery implements SelfDescribing {
     private ReturnDefaultValueAction defaultAction = new ReturnDefaultValueAction(imposteriser);
     
     private InvocationDispatcher dispatcher = new InvocationDispatcher();
-    private Error firstError = null;
+    private volatile Error firstError = null;
     private final Object synchronizeWait = new Object();
+    private volatile int waitingThreadCount = 0;
+    private volatile InvocationLog deferredInvocations = null;
     
-    private List<Invocation> actualInvocations = new ArrayList<Invocation>();
+    private final InvocationHistory actualInvocations = new InvocationHistory();
     
     
     /* 
@@ -89,6 +100,66 @@ public class Mockery implements SelfDescribing {
         this.defaultAction.setImposteriser(imposteriser);
     }
     
+    /**
+     * Limits how many invocations the Mockery remembers to describe what happened
+     * before a test failed.
+     * 
+     * By default, the Mockery remembers every invocation until it is reset.  With
+     * a limit, only the last <var>limit</var> invocations are kept, and failure
+     * reports say how many earlier invocations are not shown.
+     */
+    public void setInvocationHistoryLimit(int limit) {
+        actualInvocations.setLimit(limit);
+    }
+    
+    /**
+     * Turns on or off remembering which expectation matched each distinct invocation,
+     * so that the same invocation made again is dispatched without trying every
+     * expectation before the one that matched.
+     * 
+     * This is off by default.  It is only correct if the matchers of the expectations
+     * always give the same answer for the same parameters and if parameters are not
+     * changed after they have been passed to a mock object.  Remembered matches are
+     * forgotten whenever expectations are added, sequences advance, state machines
+     * change state or the Mockery is reset.
+     */
+    public void setCachesMatches(boolean cachesMatches) {
+        dispatcher.setCachesMatches(cachesMatches);
+    }
+    
+    /**
+     * Turns on or off deferring the verification of invocations until the test
+     * checks that the expectations have been satisfied.
+     * 
+     * This is off by default.  When it is on, invoking a mock object only appends the
+     * invocation to a log.  If the threading policy is a {@link Synchroniser} or 
+     * {@link StripedSynchroniser}, no lock is taken to do so, so that the mock objects 
+     * do not change the timing of the code under test.  Other threading policies
+     * still apply: by default, invoking a mock object from another thread fails.
+     * Pure stubs return their value and all other invocations return the default
+     * value of their result type, as if no action had been specified.
+     * {@link #assertIsSatisfied()} and {@link #waitForSatisfaction()} replay the log
+     * against the expectations, in the order the invocations happened, and fail in
+     * the same way as if each invocation had been checked when it happened.  Replaying
+     * the log counts the invocations and changes the state of sequences and state
+     * machines, but does not perform the actions of the expectations, which would
+     * otherwise run long after the invocations had returned.  Parameters must not be
+     * changed after they have been passed to a mock object.
+     * 
+     * Turning it off replays any invocations that have not been verified yet.
+     */
+    public void setDefersVerification(boolean defersVerification) {
+        if (defersVerification) {
+            if (deferredInvocations == null) {
+                deferredInvocations = new InvocationLog();
+            }
+        }
+        else {
+            replayDeferredInvocations();
+            deferredInvocations = null;
+        }
+    }
+    
     /**
      * Changes the naming scheme used to generate names for mock objects that 
      * have not been explicitly named in the test.
@@ -120,7 +191,12 @@ public class Mockery implements SelfDescribing {
      *  The default policy throws an exception if the Mockery is called from different
      *  threads.
      *  
+     *  The policy applies to mock objects created after it has been changed.  Mock objects
+     *  that have already been created keep the policy that was in effect when they were
+     *  created, so the policy should be changed before any mock objects are created.
+     *  
      *  @see Synchroniser
+     *  @see StripedSynchroniser
      */
     public void setThreadingPolicy(ThreadingPolicy threadingPolicy) {
         this.threadingPolicy = threadingPolicy;
@@ -145,16 +221,60 @@ public class Mockery implements SelfDescribing {
             throw new IllegalArgumentException("a mock with name " + name + " already exists");
         }
         
-        MockObject mock = new MockObject(typeToMock, name);
+        MockObject mock = new MockObject(typeToMock, name, 
+                                         !answersUnsynchronised(threadingPolicy), 
+                                         dispatchesConcurrently(threadingPolicy));
         mockNames.add(name);
         
-        Invokable invokable =
-            threadingPolicy.synchroniseAccessTo(
+        return imposteriser.imposterise(invokableFor(mock), typeToMock, CaptureControl.class);
+    }
+    
+    /*
+     * If the Mockery knows exactly what the threading policy does, the mock object
+     * fakes its identity and diverts expectation capture itself, instead of being
+     * wrapped in a layer for each.  Other policies, including subclasses of the
+     * known ones, wrap the layered mock object.
+     */
+    private Invokable invokableFor(MockObject mock) {
+        if (isKnownThreadingPolicy(threadingPolicy)) {
+            return new FusedMockObject(mock, threadingPolicy.synchroniseAccessTo(mock), 
+                                       answersUnsynchronised(threadingPolicy), 
+                                       !dispatchesConcurrently(threadingPolicy));
+        }
+        else {
+            return threadingPolicy.synchroniseAccessTo(
                 new ProxiedObjectIdentity(
                     new InvocationDiverter<CaptureControl>(
                         CaptureControl.class, mock, mock)));
-        
-        return imposteriser.imposterise(invokable, typeToMock, CaptureControl.class);
+        }
+    }
+    
+    private static boolean isKnownThreadingPolicy(ThreadingPolicy threadingPolicy) {
+        final Class<?> policyClass = threadingPolicy.getClass();
+        return policyClass == SingleThreadedPolicy.class
+            || policyClass == Synchroniser.class
+            || policyClass == StripedSynchroniser.class;
+    }
+    
+    /*
+     * Only the StripedSynchroniser leaves it to the Mockery to dispatch invocations
+     * from different threads safely, so invocations are dispatched without locking
+     * the whole Mockery.  A subclass may do anything, so is not trusted to.
+     */
+    private static boolean dispatchesConcurrently(ThreadingPolicy threadingPolicy) {
+        return threadingPolicy.getClass() == StripedSynchroniser.class;
+    }
+    
+    /*
+     * Pure stubs and deferred invocations can be answered before the threading policy
+     * is applied only if the policy does nothing but protect the Mockery from
+     * concurrent access.  Otherwise they are answered within the policy, so that,
+     * for example, the SingleThreadedPolicy still rejects invocations from other threads.
+     */
+    private static boolean answersUnsynchronised(ThreadingPolicy threadingPolicy) {
+        final Class<?> policyClass = threadingPolicy.getClass();
+        return policyClass == Synchroniser.class
+            || policyClass == StripedSynchroniser.class;
     }
     
     /** 
@@ -183,6 +303,22 @@ public class Mockery implements SelfDescribing {
         return dispatcher.newStateMachine(name);
     }
     
+    /** 
+     * Returns a new state machine, whose states are the constants of an enum, that 
+     * is used to constrain the order in which expectations can occur.
+     * 
+     * @param name
+     *     The name of the state machine.
+     * @param stateType
+     *     The enum type whose constants are the states of the state machine.
+     * @return
+     *     A new state machine with the given name.
+     */
+    public <S extends Enum<S>> TypedStates<S> states(String name, Class<S> stateType) {
+        return new EnumStateMachine<S>(
+            dispatcher.newStateMachine(name, EnumStateMachine.stateNamesOf(stateType)), stateType);
+    }
+    
     /**
      * Specifies the expected invocations that the object under test will perform upon
      * objects in its context during the test.
@@ -212,6 +348,7 @@ public class Mockery implements SelfDescribing {
      * Fails the test if there are any expectations that have not been met.
      */
 	public void assertIsSatisfied() {
+	    replayDeferredInvocations();
 	    if (firstError != null) {
 	        throw firstError;
 	    }
@@ -223,23 +360,46 @@ public class Mockery implements SelfDescribing {
 
     public void waitForSatisfaction(){
         synchronized (synchronizeWait) {
-            do {
-                if (firstError != null) {
-                    throw firstError;
-                }
-                if (dispatcher.isSatisfied()){
-                    return;
-                }
-                try {
-                    synchronizeWait.wait();
-                } catch (InterruptedException e) {
-                    assertIsSatisfied();
-                }
-            } while (!dispatcher.isSatisfied());
+            waitingThreadCount++;
+            try {
+                do {
+                    replayDeferredInvocations();
+                    if (firstError != null) {
+                        throw firstError;
+                    }
+                    if (dispatcher.isSatisfied()){
+                        return;
+                    }
+                    try {
+                        if (deferredInvocations != null) {
+                            // invoking a mock object does not wake up waiting threads
+                            synchronizeWait.wait(DEFERRED_REPLAY_INTERVAL_MS);
+                        }
+                        else {
+                            synchronizeWait.wait();
+                        }
+                    } catch (InterruptedException e) {
+                        assertIsSatisfied();
+                    }
+                } while (!dispatcher.isSatisfied());
+            }
+            finally {
+                waitingThreadCount--;
+            }
         }
     }
 
+    /**
+     * Forgets all expectations, invocations and failures.  Must not be called while
+     * other threads are invoking mock objects of this Mockery.  If verification is
+     * deferred, invocations still being logged by other threads are dropped along
+     * with the old log.
+     */
     public void reset(){
+        if (deferredInvocations != null) {
+            // replaced rather than cleared, so that late appends cannot reach the new log
+            deferredInvocations = new InvocationLog();
+        }
         dispatcher.clear();
         actualInvocations.clear();
         firstError = null;
@@ -251,8 +411,9 @@ public class Mockery implements SelfDescribing {
     }
     
     public void describeTo(Description description) {
-        description.appendDescriptionOf(dispatcher);
-        describeHistory(description);
+        Description truncating = TruncatingDescription.truncating(description);
+        truncating.appendDescriptionOf(dispatcher);
+        describeHistory(truncating);
     }
 
     private void describeMismatch(Invocation invocation, Description description) {
@@ -262,33 +423,101 @@ public class Mockery implements SelfDescribing {
     
     private void describeHistory(Description description) {
         description.appendText("\nwhat happened before this:");
-        
-        if (actualInvocations.isEmpty()) {
-            description.appendText(" nothing!");
+        description.appendDescriptionOf(actualInvocations);
+    }
+
+    private Object dispatch(Invocation invocation, boolean concurrently) throws Throwable {
+        if (concurrently) {
+            try {
+                return dispatchInvocation(invocation);
+            } finally {
+                wakeWaitingThreads();
+            }
         }
-        else {
-            description.appendList("\n  ", "\n  ", "\n", actualInvocations);
+        
+        synchronized (synchronizeWait) {
+            try {
+                return dispatchInvocation(invocation);
+            } finally {
+                wakeWaitingThreads();
+            }
         }
     }
 
-    private Object dispatch(Invocation invocation) throws Throwable {
+    /*
+     * Dispatches the logged invocations in the order they happened.  Their results
+     * were returned long ago, so only the first expectation error is of interest.
+     */
+    private void replayDeferredInvocations() {
+        final InvocationLog log = deferredInvocations;
+        if (log == null) {
+            return;
+        }
+        
         synchronized (synchronizeWait) {
-            if (firstError != null) {
-                throw firstError;
+            for (Invocation invocation : log.takeUnreplayed()) {
+                if (firstError != null) {
+                    return;
+                }
+                replayInvocation(invocation);
             }
+        }
+    }
+    
+    private void replayInvocation(Invocation invocation) {
+        try {
+            dispatcher.replay(invocation);
+            actualInvocations.add(invocation);
+        } catch (ExpectationError e) {
+            recordFirstError(translated(e));
+        } catch (Throwable t) {
+            // thrown by an expectation that is not an InvocationExpectation: the invocation has already returned
+            actualInvocations.add(invocation);
+        }
+    }
 
-            try {
-                Object result = dispatcher.dispatch(invocation);
-                actualInvocations.add(invocation);
-                return result;
-            } catch (ExpectationError e) {
-                firstError = expectationErrorTranslator.translate(mismatchDescribing(e));
-                firstError.setStackTrace(e.getStackTrace());
-                throw firstError;
-            } catch (Throwable t) {
-                actualInvocations.add(invocation);
-                throw t;
-            } finally {
+    private Object dispatchInvocation(Invocation invocation) throws Throwable {
+        if (firstError != null) {
+            throw firstError;
+        }
+
+        try {
+            Object result = dispatcher.dispatch(invocation);
+            actualInvocations.add(invocation);
+            return result;
+        } catch (ExpectationError e) {
+            Error error = translated(e);
+            recordFirstError(error);
+            throw error;
+        } catch (Throwable t) {
+            actualInvocations.add(invocation);
+            throw t;
+        }
+    }
+    
+    private Error translated(ExpectationError e) {
+        Error error = expectationErrorTranslator.translate(mismatchDescribing(e));
+        error.setStackTrace(e.getStackTrace());
+        return error;
+    }
+    
+    private void recordFirstError(Error error) {
+        synchronized (synchronizeWait) {
+            if (firstError == null) {
+                firstError = error;
+            }
+        }
+    }
+    
+    /*
+     * Threads in waitForSatisfaction are only woken when they can return.
+     * Checking satisfaction is cheap, so it is checked before taking the lock:
+     * a waiter that missed the change is still checking, under the lock, and
+     * will be notified once it waits.
+     */
+    private void wakeWaitingThreads() {
+        if (waitingThreadCount > 0 && (firstError != null || dispatcher.isSatisfied())) {
+            synchronized (synchronizeWait) {
                 synchronizeWait.notifyAll();
             }
         }
@@ -299,7 +528,16 @@ public class Mockery implements SelfDescribing {
             public void describeTo(Description description) {
                 describeMismatch(e.invocation, description);
             }
-        }, e.invocation);
+        }, e.invocation) {
+            /*
+             * The parameters of the invocations may be arbitrarily large, so the
+             * message is truncated rather than built in full.
+             */
+            @Override
+            public void describeTo(Description description) {
+                super.describeTo(TruncatingDescription.truncating(description));
+            }
+        };
         filledIn.setStackTrace(e.getStackTrace());
         return filledIn;
     }
@@ -308,9 +546,16 @@ public class Mockery implements SelfDescribing {
         private Class<?> mockedType;
         private String name;
         
-        public MockObject(Class<?> mockedType, String name) {
+        private final boolean answersWithinThreadingPolicy;
+        private final boolean dispatchesConcurrently;
+        
+        public MockObject(Class<?> mockedType, String name, 
+                          boolean answersWithinThreadingPolicy, boolean dispatchesConcurrently) 
+        {
             this.name = name;
             this.mockedType = mockedType;
+            this.answersWithinThreadingPolicy = answersWithinThreadingPolicy;
+            this.dispatchesConcurrently = dispatchesConcurrently;
         }
         
         @Override
@@ -319,14 +564,111 @@ public class Mockery implements SelfDescribing {
         }
         
         public Object invoke(Invocation invocation) throws Throwable {
-            return dispatch(invocation);
+            final Method method = invocation.getInvokedMethod();
+            final ObjectMethod objectMethod = ObjectMethod.of(method);
+            if (objectMethod != ObjectMethod.NONE) {
+                return fakeObjectMethod(objectMethod, invocation);
+            }
+            else if (method.getDeclaringClass() == CaptureControl.class) {
+                return captureExpectationTo((ExpectationCapture)invocation.getParameter(0));
+            }
+            else if (answersWithinThreadingPolicy) {
+                Object result = answerUnsynchronised(invocation);
+                return result != MUST_DISPATCH ? result : dispatch(invocation, dispatchesConcurrently);
+            }
+            else {
+                return dispatch(invocation, dispatchesConcurrently);
+            }
+        }
+        
+        /**
+         * Answers <var>invocation</var> without taking any lock if it is answered
+         * by a pure stub or its verification is deferred, or otherwise returns
+         * {@link #MUST_DISPATCH}.  Once the test has failed, every invocation is
+         * dispatched so that it fails too.
+         */
+        public Object answerUnsynchronised(Invocation invocation) throws Throwable {
+            if (firstError != null) {
+                return MUST_DISPATCH;
+            }
+            
+            StubTable.Stub stub = dispatcher.getStubTable().stubFor(invocation);
+            if (stub != null) {
+                return stub.invoke();
+            }
+            
+            InvocationLog log = deferredInvocations;
+            if (log != null && invocation.getInvokedMethod().getDeclaringClass() != CaptureControl.class) {
+                log.append(invocation);
+                return defaultAction.invoke(invocation);
+            }
+            return MUST_DISPATCH;
+        }
+        
+        public Object fakeObjectMethod(ObjectMethod objectMethod, Invocation invocation) {
+            switch (objectMethod) {
+            case HASH_CODE:
+                return System.identityHashCode(invocation.getInvokedObject());
+            case TO_STRING:
+                return name;
+            case EQUALS:
+                return invocation.getParameter(0) == invocation.getInvokedObject();
+            default:
+                return null;
+            }
         }
 
+        /**
+         * Each expectation is captured by an imposter of its own, so that imposters
+         * held at the same time, by one thread or several, never capture each other's
+         * expectations.  The imposteriser reuses the class of imposter it made for the
+         * mocked type, so this only costs a new instance.
+         */
         public Object captureExpectationTo(ExpectationCapture capture) {
             return imposteriser.imposterise(
                 new ObjectMethodExpectationBouncer(new InvocationToExpectationTranslator(capture, defaultAction)), 
                 mockedType);
         }
     }
+    
+    private static class FusedMockObject implements Invokable {
+        private final MockObject mockObject;
+        private final Invokable synchronisedMockObject;
+        private final boolean answersUnsynchronised;
+        private final boolean synchronisesObjectMethods;
+        
+        public FusedMockObject(MockObject mockObject, Invokable synchronisedMockObject, 
+                               boolean answersUnsynchronised, boolean synchronisesObjectMethods) 
+        {
+            this.mockObject = mockObject;
+            this.synchronisedMockObject = synchronisedMockObject;
+            this.answersUnsynchronised = answersUnsynchronised;
+            this.synchronisesObjectMethods = synchronisesObjectMethods;
+        }
+        
+        @Override
+        public String toString() {
+            return mockObject.toString();
+        }
+        
+        public Object invoke(Invocation invocation) throws Throwable {
+            final ObjectMethod objectMethod = ObjectMethod.of(invocation.getInvokedMethod());
+            if (objectMethod == ObjectMethod.NONE) {
+                if (!answersUnsynchronised) {
+                    return synchronisedMockObject.invoke(invocation);
+                }
+                Object result = mockObject.answerUnsynchronised(invocation);
+                if (result != MUST_DISPATCH) {
+                    return result;
+                }
+            }
+            else if (!synchronisesObjectMethods) {
+                // the identity of a mock object does not need a lock, and taking the lock
+                // to describe other mock objects in an error message could deadlock
+                return mockObject.fakeObjectMethod(objectMethod, invocation);
+            }
+            return synchronisedMockObject.invoke(invocation);
+        }
+    }
 
 }
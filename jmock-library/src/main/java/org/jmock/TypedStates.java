@@ -0,0 +1,39 @@
+package org.jmock;
+
+import org.hamcrest.SelfDescribing;
+import org.jmock.internal.State;
+import org.jmock.internal.StatePredicate;
+
+/**
+ * A state machine, used to constrain the order of invocations, whose states
+ * are the constants of an enum.
+ * 
+ * Because the states are declared up front, the state machine can only be put 
+ * into a state that exists, and a misspelt state is a compile error rather than 
+ * a test that cannot pass.
+ * 
+ * @param <S> the enum type whose constants are the states of the machine.
+ */
+public interface TypedStates<S extends Enum<S>> extends SelfDescribing {
+    /**
+     * Put the state machine into state <var>initialState</var>.
+     *  
+     * @param initialState
+     *     The initial state of the state machine.
+     * @return
+     *     Itself.
+     */
+    TypedStates<S> startsAs(S initialState);
+    
+    /**
+     * Put the state machine into state <var>nextState</var>.
+     *  
+     * @param nextState
+     *     The next state of the state machine.
+     */
+    void become(S nextState);
+    
+    State is(S state);
+    
+    StatePredicate isNot(S state);
+}
@@ -1,7 +1,12 @@
 package org.jmock.auto.internal;
 
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.jmock.Mockery;
 import org.jmock.Sequence;
@@ -11,7 +16,15 @@ import org.jmock.auto.Mock;
 import org.jmock.internal.AllDeclaredFields;
 
 
+/**
+ * Fills in the fields of an object that are annotated with {@link Mock} or {@link Auto}.
+ * 
+ * The annotated fields of each class are found, and made accessible, once.
+ */
 public class Mockomatic {
+    private static final Map<Class<?>, Reference<List<AutoField>>> autoFieldsByClass =
+        new WeakHashMap<Class<?>, Reference<List<AutoField>>>();
+    
     private final Mockery mockery;
 
     public Mockomatic(Mockery mockery) {
@@ -19,59 +32,103 @@ public class Mockomatic {
     }
 
     public void fillIn(Object object) {
-        fillIn(object, AllDeclaredFields.in(object.getClass()));
+        fillInAutoFields(object, autoFieldsOf(object.getClass()));
     }
 
     public void fillIn(Object object, final List<Field> knownFields) {
-        for (Field field : knownFields) {
+        fillInAutoFields(object, autoFieldsAmong(knownFields));
+    }
+    
+    private void fillInAutoFields(Object object, List<AutoField> autoFields) {
+        for (AutoField autoField : autoFields) {
+            autoField.fillIn(object, mockery);
+        }
+    }
+    
+    private static List<AutoField> autoFieldsOf(Class<?> type) {
+        synchronized (autoFieldsByClass) {
+            final Reference<List<AutoField>> existing = autoFieldsByClass.get(type);
+            List<AutoField> autoFields = existing == null ? null : existing.get();
+            if (autoFields == null) {
+                autoFields = autoFieldsAmong(AllDeclaredFields.in(type));
+                autoFieldsByClass.put(type, new SoftReference<List<AutoField>>(autoFields));
+            }
+            return autoFields;
+        }
+    }
+    
+    private static List<AutoField> autoFieldsAmong(List<Field> fields) {
+        List<AutoField> autoFields = new ArrayList<AutoField>();
+        for (Field field : fields) {
             if (field.isAnnotationPresent(Mock.class)) {
-                autoMock(object, field);
+                autoFields.add(new AutoField(field, Kind.MOCK));
             }
             else if (field.isAnnotationPresent(Auto.class)) {
-                autoInstantiate(object, field);
+                autoFields.add(new AutoField(field, autoInstantiatedKindOf(field)));
             }
         }
+        return autoFields;
     }
-
-    private void autoMock(Object object, Field field) {
-        setAutoField(field, object, 
-                     mockery.mock(field.getType(), field.getName()),
-                     "auto-mock field " + field.getName());
-    }
-
-    private void autoInstantiate(Object object, Field field) {
+    
+    private static Kind autoInstantiatedKindOf(Field field) {
         final Class<?> type = field.getType();
         if (type == States.class) {
-            autoInstantiateStates(field, object);
+            return Kind.STATES;
         }
         else if (type == Sequence.class) {
-            autoInstantiateSequence(field, object);
+            return Kind.SEQUENCE;
         }
         else {
             throw new IllegalStateException("cannot auto-instantiate field of type " + type.getName());
         }
     }
-
-    private void autoInstantiateStates(Field field, Object object) {
-        setAutoField(field, object, 
-                     mockery.states(field.getName()), 
-                     "auto-instantiate States field " + field.getName());
-    }
     
-    private void autoInstantiateSequence(Field field, Object object) {
-        setAutoField(field, object, 
-                     mockery.sequence(field.getName()), 
-                     "auto-instantiate Sequence field " + field.getName());
+    private enum Kind {
+        MOCK("auto-mock field ") {
+            @Override
+            public Object valueFor(Field field, Mockery mockery) {
+                return mockery.mock(field.getType(), field.getName());
+            }
+        },
+        STATES("auto-instantiate States field ") {
+            @Override
+            public Object valueFor(Field field, Mockery mockery) {
+                return mockery.states(field.getName());
+            }
+        },
+        SEQUENCE("auto-instantiate Sequence field ") {
+            @Override
+            public Object valueFor(Field field, Mockery mockery) {
+                return mockery.sequence(field.getName());
+            }
+        };
+        
+        public final String description;
+        
+        private Kind(String description) {
+            this.description = description;
+        }
+        
+        public abstract Object valueFor(Field field, Mockery mockery);
     }
-
-    private void setAutoField(Field field, Object object, Object value, String description) {
-        try {
-            field.setAccessible(true);
-            field.set(object, value);
+    
+    private static class AutoField {
+        private final Field field;
+        private final Kind kind;
+        
+        public AutoField(Field field, Kind kind) {
+            this.field = AllDeclaredFields.accessibleCopyOf(field);
+            this.kind = kind;
         }
-        catch (IllegalAccessException e) {
-            throw new IllegalStateException("cannot " + description, e);
+        
+        public void fillIn(Object object, Mockery mockery) {
+            Object value = kind.valueFor(field, mockery);
+            try {
+                field.set(object, value);
+            }
+            catch (IllegalAccessException e) {
+                throw new IllegalStateException("cannot " + kind.description + field.getName(), e);
+            }
         }
     }
-
 }
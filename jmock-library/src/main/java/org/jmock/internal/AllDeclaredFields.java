@@ -1,13 +1,55 @@
 package org.jmock.internal;
 
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import static java.util.Arrays.asList;
 
 public class AllDeclaredFields {
+    private static final Map<Class<?>, Reference<List<Field>>> fieldsByClass =
+        new WeakHashMap<Class<?>, Reference<List<Field>>>();
+    
+    /**
+     * Returns the fields declared by <var>clazz</var> and its superclasses.
+     * 
+     * The fields of each class are looked up once and the list that is returned
+     * cannot be modified.  The same Field objects are returned to every caller, so
+     * they must not be made accessible: use {@link #accessibleCopyOf(Field)} instead.
+     */
     public static List<Field> in(Class<?> clazz) {
+        synchronized (fieldsByClass) {
+            final Reference<List<Field>> existing = fieldsByClass.get(clazz);
+            List<Field> fields = existing == null ? null : existing.get();
+            if (fields == null) {
+                fields = Collections.unmodifiableList(declaredFieldsIn(clazz));
+                fieldsByClass.put(clazz, new SoftReference<List<Field>>(fields));
+            }
+            return fields;
+        }
+    }
+    
+    /**
+     * Returns a copy of <var>field</var>, for the caller's own use, that has been
+     * made accessible.
+     */
+    public static Field accessibleCopyOf(Field field) {
+        try {
+            final Field copy = field.getDeclaringClass().getDeclaredField(field.getName());
+            copy.setAccessible(true);
+            return copy;
+        }
+        catch (NoSuchFieldException e) {
+            throw new IllegalStateException("cannot find field " + field.getName(), e);
+        }
+    }
+    
+    private static List<Field> declaredFieldsIn(Class<?> clazz) {
         final ArrayList<Field> fields = new ArrayList<Field>();
         for (Class<?> c = clazz; c != Object.class; c = c.getSuperclass()) {
             fields.addAll(asList(c.getDeclaredFields()));
@@ -1,7 +1,9 @@
 package org.jmock.internal;
 
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 
 public class BoxingUtils {
     private static final HashSet<Class<?>> WRAPPER_TYPES = new HashSet<Class<?>>() {{
@@ -16,7 +18,23 @@ public class BoxingUtils {
         add(Void.class);
     }};
 
+    private static final Map<Class<?>, Class<?>> BOXED_TYPES = new HashMap<Class<?>, Class<?>>() {{
+        put(boolean.class, Boolean.class);
+        put(char.class, Character.class);
+        put(byte.class, Byte.class);
+        put(short.class, Short.class);
+        put(int.class, Integer.class);
+        put(long.class, Long.class);
+        put(float.class, Float.class);
+        put(double.class, Double.class);
+        put(void.class, Void.class);
+    }};
+
     public static boolean isWrapperType(Class<?> clazz) {
         return WRAPPER_TYPES.contains(clazz);
     }
+
+    public static Class<?> boxedType(Class<?> clazz) {
+        return clazz.isPrimitive() ? BOXED_TYPES.get(clazz) : clazz;
+    }
 }
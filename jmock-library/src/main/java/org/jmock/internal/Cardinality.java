@@ -43,9 +43,13 @@ public class Cardinality implements SelfDescribing {
     public boolean allowsMoreInvocations(int invocationCount) {
         return invocationCount < maximum;
     }
+    
+    public boolean allowsAnyNumberOfInvocations() {
+        return required == 0 && maximum == Integer.MAX_VALUE;
+    }
 
     public void describeTo(Description description) {
-        if (required == 0 && maximum == Integer.MAX_VALUE) {
+        if (allowsAnyNumberOfInvocations()) {
             description.appendText("allowed");
         }
         else {
@@ -0,0 +1,71 @@
+package org.jmock.internal;
+
+import org.hamcrest.Description;
+import org.hamcrest.StringDescription;
+import org.jmock.TypedStates;
+
+/**
+ * Adapts a {@link StateMachine} whose states are declared up front to the 
+ * constants of an enum.  The state for each constant is looked up once, 
+ * so changing state does not look up the state by name.
+ */
+public class EnumStateMachine<S extends Enum<S>> implements TypedStates<S> {
+    private final StateMachine stateMachine;
+    private final State[] states;
+    private final StatePredicate[] notStates;
+    
+    public EnumStateMachine(StateMachine stateMachine, Class<S> stateType) {
+        final S[] constants = stateType.getEnumConstants();
+        
+        this.stateMachine = stateMachine;
+        this.states = new State[constants.length];
+        this.notStates = new StatePredicate[constants.length];
+        for (S constant : constants) {
+            states[constant.ordinal()] = stateMachine.is(constant.name());
+            notStates[constant.ordinal()] = stateMachine.isNot(constant.name());
+        }
+    }
+    
+    /**
+     * The names of the states of a machine for the constants of <var>stateType</var>,
+     * in the order of their ordinals.
+     */
+    public static String[] stateNamesOf(Class<? extends Enum<?>> stateType) {
+        final Enum<?>[] constants = stateType.getEnumConstants();
+        final String[] names = new String[constants.length];
+        for (Enum<?> constant : constants) {
+            names[constant.ordinal()] = constant.name();
+        }
+        return names;
+    }
+    
+    @Override
+    public String toString() {
+        return StringDescription.asString(this);
+    }
+    
+    public TypedStates<S> startsAs(S initialState) {
+        become(initialState);
+        return this;
+    }
+    
+    public void become(S nextState) {
+        states[nextState.ordinal()].activate();
+    }
+    
+    public State is(S state) {
+        return states[state.ordinal()];
+    }
+    
+    public StatePredicate isNot(S state) {
+        return notStates[state.ordinal()];
+    }
+    
+    public int version() {
+        return stateMachine.version();
+    }
+    
+    public void describeTo(Description description) {
+        stateMachine.describeTo(description);
+    }
+}
@@ -0,0 +1,146 @@
+package org.jmock.internal;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jmock.api.Expectation;
+import org.jmock.api.Invocation;
+
+/**
+ * Narrows down the expectations that have to be tried against an invocation.
+ *
+ * Expectations that can only match invocations of one method of one mock object
+ * are filed under that mock object and the name of that method.  All other
+ * expectations are tried against every invocation.  Candidates are always tried
+ * in the order in which the expectations were added, so the first matching
+ * expectation is the same one that would be found by trying every expectation.
+ *
+ * Mock objects are looked up by identity so that finding candidates never
+ * invokes the mock objects themselves.
+ */
+public class ExpectationIndex {
+    private static final List<Entry> NO_ENTRIES = Collections.emptyList();
+
+    private final Map<Object, Map<String, List<Entry>>> entriesByMockObject =
+        new IdentityHashMap<Object, Map<String, List<Entry>>>();
+    private final List<Entry> entriesForEveryInvocation = new ArrayList<Entry>();
+    private int nextOrdinal = 0;
+
+    public void add(Expectation expectation) {
+        if (expectation instanceof InvocationExpectation) {
+            ((InvocationExpectation)expectation).addTo(this);
+        }
+        else {
+            addForEveryInvocation(expectation);
+        }
+    }
+
+    public void addForEveryInvocation(Expectation expectation) {
+        entriesForEveryInvocation.add(new Entry(nextOrdinal++, expectation));
+    }
+
+    public void addForInvocationsOf(Object mockObject, Method method, Expectation expectation) {
+        Map<String, List<Entry>> entriesByMethodName = entriesByMockObject.get(mockObject);
+        if (entriesByMethodName == null) {
+            entriesByMethodName = new HashMap<String, List<Entry>>();
+            entriesByMockObject.put(mockObject, entriesByMethodName);
+        }
+
+        List<Entry> entries = entriesByMethodName.get(method.getName());
+        if (entries == null) {
+            entries = new ArrayList<Entry>();
+            entriesByMethodName.put(method.getName(), entries);
+        }
+
+        entries.add(new Entry(nextOrdinal++, expectation));
+    }
+
+    /**
+     * Reports whether any expectation added so far, other than a pure stub, might
+     * match an invocation of <var>method</var> of <var>mockObject</var>.
+     */
+    public boolean hasCandidatesOtherThanPureStubsFor(Object mockObject, Method method) {
+        if (!areAllPureStubs(entriesForEveryInvocation)) {
+            return true;
+        }
+
+        Map<String, List<Entry>> entriesByMethodName = entriesByMockObject.get(mockObject);
+        if (entriesByMethodName == null) {
+            return false;
+        }
+
+        List<Entry> entries = entriesByMethodName.get(method.getName());
+        return entries != null && !areAllPureStubs(entries);
+    }
+
+    private static boolean areAllPureStubs(List<Entry> entries) {
+        for (Entry entry : entries) {
+            if (!(entry.expectation instanceof InvocationExpectation
+                  && ((InvocationExpectation)entry.expectation).isPureStub()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        entriesByMockObject.clear();
+        entriesForEveryInvocation.clear();
+        nextOrdinal = 0;
+    }
+
+    /**
+     * Returns the first expectation, in the order they were added, that
+     * matches <var>invocation</var>, or <code>null</code> if none do.
+     */
+    public Expectation firstMatching(Invocation invocation) {
+        final List<Entry> specific = entriesFor(invocation);
+        final List<Entry> general = entriesForEveryInvocation;
+
+        int s = 0;
+        int g = 0;
+        while (s < specific.size() || g < general.size()) {
+            final Entry next;
+            if (g == general.size()
+                || (s < specific.size() && specific.get(s).ordinal < general.get(g).ordinal))
+            {
+                next = specific.get(s++);
+            }
+            else {
+                next = general.get(g++);
+            }
+
+            if (next.expectation.matches(invocation)) {
+                return next.expectation;
+            }
+        }
+
+        return null;
+    }
+
+    private List<Entry> entriesFor(Invocation invocation) {
+        Map<String, List<Entry>> entriesByMethodName = entriesByMockObject.get(invocation.getInvokedObject());
+        if (entriesByMethodName == null) {
+            return NO_ENTRIES;
+        }
+
+        List<Entry> entries = entriesByMethodName.get(invocation.getInvokedMethod().getName());
+        return entries == null ? NO_ENTRIES : entries;
+    }
+
+    private static class Entry {
+        public final int ordinal;
+        public final Expectation expectation;
+
+        public Entry(int ordinal, Expectation expectation) {
+            this.ordinal = ordinal;
+            this.expectation = expectation;
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package org.jmock.internal;
 
+import java.util.Locale;
+
 public class Formatting {
 
     public static String times(int i) {
         return i + " " + (i == 1 ? "time" : "times");
     }
+    
+    public static String count(long n) {
+        return String.format(Locale.ENGLISH, "%,d", n);
+    }
 
 }
@@ -9,24 +9,79 @@ import org.jmock.api.Invocation;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class InvocationDispatcher implements ExpectationCollector, SelfDescribing {
 	private List<Expectation> expectations = new ArrayList<Expectation>();
 	private List<StateMachine> stateMachines = new ArrayList<StateMachine>();
+	private ExpectationIndex index = new ExpectationIndex();
+	private final StubTable stubTable = new StubTable();
+	
+	private MatchCache matchCache = null;
+	private boolean hasOnlyInvocationExpectations = true;
+	private final AtomicLong changeCount = new AtomicLong(0);
+	private final Object orderingLock = new Object();
+	private AtomicInteger unsatisfiedCount = new AtomicInteger(0);
+	private List<Expectation> untrackedExpectations = new ArrayList<Expectation>();
+    
+    /**
+     * Turns on or off remembering which expectation matched each distinct invocation.
+     * 
+     * Remembered matches are forgotten when expectations are added, when an expectation
+     * with ordering constraints is invoked and when a state machine changes state.  
+     * Remembering matches is only correct if the matchers of the expectations always
+     * give the same answer for the same parameters and the parameters are not changed
+     * after they have been passed to a mock object.
+     */
+    public void setCachesMatches(boolean cachesMatches) {
+        this.matchCache = cachesMatches ? new MatchCache() : null;
+    }
+    
+    /**
+     * Returns the table of pure stubs, which can be consulted before dispatching
+     * an invocation without holding any lock.  Pure stubs that were declared after
+     * another expectation that might match the same invocations are left out of the
+     * table.  All pure stubs are also dispatched like any other expectation.
+     */
+    public StubTable getStubTable() {
+        return stubTable;
+    }
     
-    public StateMachine newStateMachine(String name) {
-        StateMachine stateMachine = new StateMachine(name);
+    public StateMachine newStateMachine(String name, String... declaredStates) {
+        StateMachine stateMachine = new StateMachine(name, declaredStates);
         stateMachines.add(stateMachine);
         return stateMachine;
     }
     
 	public void add(Expectation expectation) {
+		if (expectation instanceof InvocationExpectation && ((InvocationExpectation)expectation).isPureStub()) {
+		    ((InvocationExpectation)expectation).addTo(stubTable, index);
+		}
 		expectations.add(expectation);
+		index.add(expectation);
+		if (expectation instanceof InvocationExpectation) {
+		    ((InvocationExpectation)expectation).trackSatisfactionWith(unsatisfiedCount);
+		}
+		else {
+		    untrackedExpectations.add(expectation);
+		    hasOnlyInvocationExpectations = false;
+		}
+		changeCount.incrementAndGet();
 	}
 
     public void clear(){
         expectations.clear();
         stateMachines.clear();
+        index.clear();
+        stubTable.clear();
+        hasOnlyInvocationExpectations = true;
+        unsatisfiedCount = new AtomicInteger(0);
+        untrackedExpectations = new ArrayList<Expectation>();
+        changeCount.incrementAndGet();
+        if (matchCache != null) {
+            matchCache.clear();
+        }
     }
 	
     public void describeTo(Description description) {
@@ -71,8 +126,16 @@ public class InvocationDispatcher implements ExpectationCollector, SelfDescribin
     }
     
 
+    /**
+     * Answers in constant time if all the expectations are
+     * {@link InvocationExpectation}s, which count themselves as they become satisfied.
+     * Other expectations are asked one by one.
+     */
     public boolean isSatisfied() {
-		for (Expectation expectation : expectations) {
+        if (unsatisfiedCount.get() > 0) {
+            return false;
+        }
+		for (Expectation expectation : untrackedExpectations) {
 		    if (! expectation.isSatisfied()) {
                 return false;
             }
@@ -81,13 +144,115 @@ public class InvocationDispatcher implements ExpectationCollector, SelfDescribin
 	}
 	
 	public Object dispatch(Invocation invocation) throws Throwable {
-		for (Expectation expectation : expectations) {
-		    if (expectation.matches(invocation)) {
+		Expectation expectation;
+		while ((expectation = firstMatching(invocation)) != null) {
+		    if (!(expectation instanceof InvocationExpectation)) {
 		        return expectation.invoke(invocation);
-            }
+		    }
+		    
+		    final InvocationExpectation invocationExpectation = (InvocationExpectation)expectation;
+		    if (invocationExpectation.hasOrderingConstraintsOrSideEffects()) {
+		        return dispatchOrdered(invocation);
+		    }
+		    if (invocationExpectation.claimInvocation()) {
+		        return invocationExpectation.invokeClaimed(invocation);
+		    }
+		    // another thread used up the expectation after it was matched: look again
         }
         
         throw new ExpectationError("unexpected invocation", invocation);
 	}
+	
+	/*
+	 * Ordering constraints read, and side effects change, the state of sequences and
+	 * state machines, which is shared between mock objects that may be invoked in
+	 * parallel.  The invocation is therefore matched again, claimed and its side
+	 * effects performed under one lock, so that no other expectation with ordering
+	 * constraints or side effects can be matched in between.  The action is
+	 * performed after the lock has been released, so that actions that invoke other
+	 * mock objects cannot deadlock on it.
+	 */
+	private Object dispatchOrdered(Invocation invocation) throws Throwable {
+	    final Expectation expectation;
+	    synchronized (orderingLock) {
+	        expectation = claimFirstMatching(invocation);
+	    }
+	    
+	    if (expectation instanceof InvocationExpectation) {
+	        return ((InvocationExpectation)expectation).performAction(invocation);
+	    }
+	    else {
+	        return expectation.invoke(invocation);
+	    }
+	}
+	
+	/**
+	 * Matches and counts an invocation that has already been answered, and performs
+	 * the side effects of the expectation it matches, without performing its action.
+	 * Expectations other than {@link InvocationExpectation}s can only be counted by
+	 * invoking them.
+	 */
+	public void replay(Invocation invocation) throws Throwable {
+	    final Expectation expectation;
+	    synchronized (orderingLock) {
+	        expectation = claimFirstMatching(invocation);
+	    }
+	    
+	    if (!(expectation instanceof InvocationExpectation)) {
+	        expectation.invoke(invocation);
+	    }
+	}
+	
+	private Expectation claimFirstMatching(Invocation invocation) {
+	    Expectation expectation;
+	    while ((expectation = firstMatching(invocation)) != null) {
+	        if (!(expectation instanceof InvocationExpectation)) {
+	            return expectation;
+	        }
+	        
+	        final InvocationExpectation invocationExpectation = (InvocationExpectation)expectation;
+	        if (invocationExpectation.claimInvocation()) {
+	            if (matchCache != null && invocationExpectation.hasOrderingConstraints()) {
+	                // invoking it may allow expectations later in its sequence
+	                changeCount.incrementAndGet();
+	            }
+	            invocationExpectation.performSideEffects();
+	            return invocationExpectation;
+	        }
+	    }
+	    
+	    throw new ExpectationError("unexpected invocation", invocation);
+	}
+	
+	private Expectation firstMatching(Invocation invocation) {
+	    final MatchCache cache = matchCache;
+	    if (cache == null || !hasOnlyInvocationExpectations) {
+	        return index.firstMatching(invocation);
+	    }
+	    
+	    final long version = matchVersion();
+	    final InvocationExpectation remembered = cache.lookUp(invocation, version);
+	    if (remembered != null && remembered.allowsMoreInvocations()) {
+	        return remembered;
+	    }
+	    
+	    final Expectation expectation = index.firstMatching(invocation);
+	    if (expectation != null) {
+	        cache.remember(invocation, (InvocationExpectation)expectation, version);
+	    }
+	    return expectation;
+	}
+	
+	/*
+	 * Every count in the sum only ever increases, so the sum changes whenever
+	 * any of them does.
+	 */
+	private long matchVersion() {
+	    long version = changeCount.get();
+	    for (StateMachine stateMachine : stateMachines) {
+	        version += stateMachine.version();
+	    }
+	    return version;
+	}
 
 }
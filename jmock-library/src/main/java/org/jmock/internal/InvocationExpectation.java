@@ -7,11 +7,14 @@ import org.jmock.api.Action;
 import org.jmock.api.Expectation;
 import org.jmock.api.Invocation;
 import org.jmock.internal.matcher.MethodMatcher;
+import org.jmock.internal.matcher.MockObjectMatcher;
+import org.jmock.lib.action.ReturnValueAction;
 import org.jmock.lib.action.VoidAction;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** 
  * An expectation of zero or more matching invocations.
@@ -30,8 +33,10 @@ public class InvocationExpectation implements Expectation {
     private boolean actionIsDefault = true;
     private List<OrderingConstraint> orderingConstraints = new ArrayList<OrderingConstraint>();
     private List<SideEffect> sideEffects = new ArrayList<SideEffect>();
+    private boolean isPureStub = false;
     
-	private int invocationCount = 0;
+	private final AtomicInteger invocationCount = new AtomicInteger(0);
+	private AtomicInteger unsatisfiedCount = null;
 	
     public void setCardinality(Cardinality cardinality) {
         this.cardinality = cardinality;
@@ -63,6 +68,83 @@ public class InvocationExpectation implements Expectation {
         sideEffects.add(sideEffect);
     }
     
+    /**
+     * Declares that this expectation is a pure stub: it allows any number of
+     * invocations of one method of one mock object, always returns the same value
+     * and has no ordering constraints or side effects.
+     */
+    public void setPureStub(boolean isPureStub) {
+        this.isPureStub = isPureStub;
+    }
+    
+    public boolean isPureStub() {
+        return isPureStub;
+    }
+    
+    /**
+     * Files this expectation in <var>index</var> under the mock object and method
+     * it expects, if both are known exactly, or otherwise as an expectation that
+     * must be tried against every invocation.
+     */
+    public void addTo(ExpectationIndex index) {
+        if (objectMatcher instanceof MockObjectMatcher && methodMatcher instanceof MethodMatcher) {
+            index.addForInvocationsOf(((MockObjectMatcher)objectMatcher).getMockObject(),
+                                      ((MethodMatcher)methodMatcher).getExpectedMethod(),
+                                      this);
+        }
+        else {
+            index.addForEveryInvocation(this);
+        }
+    }
+    
+    /**
+     * Files this expectation, which must be a pure stub, in <var>table</var>.
+     * The value it returns is worked out, and checked against the return type
+     * of the method, only once.
+     * 
+     * The stub is not filed if an expectation in <var>earlierExpectations</var>,
+     * other than a pure stub, might match the same invocations.  The stub is then
+     * left to be dispatched in the order in which it was declared.
+     * 
+     * @throws IllegalStateException
+     *     if this expectation is not a pure stub.
+     */
+    public void addTo(StubTable table, ExpectationIndex earlierExpectations) {
+        if (!(objectMatcher instanceof MockObjectMatcher && methodMatcher instanceof MethodMatcher)) {
+            throw new IllegalStateException("a pure stub must specify one method of one mock object");
+        }
+        if (!cardinality.allowsAnyNumberOfInvocations()) {
+            throw new IllegalStateException("a pure stub must allow any number of invocations");
+        }
+        if (!orderingConstraints.isEmpty() || !sideEffects.isEmpty()) {
+            throw new IllegalStateException("a pure stub cannot be ordered or have side effects");
+        }
+        
+        final Object mockObject = ((MockObjectMatcher)objectMatcher).getMockObject();
+        final Method method = ((MethodMatcher)methodMatcher).getExpectedMethod();
+        final Invocation invocation = new Invocation(mockObject, method, new Object[method.getParameterTypes().length]);
+        final Object result;
+        if (action instanceof ReturnValueAction || action instanceof VoidAction) {
+            try {
+                result = action.invoke(invocation);
+            }
+            catch (Throwable t) {
+                throw new IllegalStateException("could not work out the result of a pure stub", t);
+            }
+        }
+        else if (actionIsDefault && methodIsKnownToBeVoid) {
+            result = null;
+        }
+        else {
+            throw new IllegalStateException("a pure stub must return a value or be void");
+        }
+        invocation.checkReturnTypeCompatibility(result);
+        
+        if (!earlierExpectations.hasCandidatesOtherThanPureStubsFor(mockObject, method)) {
+            table.add(mockObject, method, parametersMatcher, result, this);
+        }
+    }
+    
     public void setAction(Action action) {
         this.action = action;
         this.actionIsDefault = false;
@@ -84,11 +166,10 @@ public class InvocationExpectation implements Expectation {
     public void describeMismatch(Invocation invocation, Description description) {
         describeExpectation(description);
 
-        final Object[] parameters = invocation.getParametersAsArray();
         if (methodMatcher.matches(invocation.getInvokedMethod()) &&
-            parametersMatcher.isCompatibleWith(parameters))
+            parametersMatcher.isCompatibleWithParametersOf(invocation))
         {
-            parametersMatcher.describeMismatch(parameters, description);
+            parametersMatcher.describeMismatchOfParametersOf(invocation, description);
         }
     }
 
@@ -101,12 +182,13 @@ public class InvocationExpectation implements Expectation {
     private void describeMethod(Description description) {
         cardinality.describeTo(description);
         description.appendText(", ");
-        if (invocationCount == 0) {
+        final int count = invocationCount.get();
+        if (count == 0) {
             description.appendText("never invoked");
         }
         else {
             description.appendText("already invoked ");
-            description.appendText(Formatting.times(invocationCount));
+            description.appendText(Formatting.times(count));
         }
         description.appendText(": ");
         objectMatcher.describeTo(description);
@@ -136,18 +218,43 @@ public class InvocationExpectation implements Expectation {
     }
 
     public boolean isSatisfied() {
-        return cardinality.isSatisfied(invocationCount);
+        return cardinality.isSatisfied(invocationCount.get());
+    }
+    
+    /**
+     * Counts this expectation in <var>unsatisfiedCount</var> until it has been
+     * invoked often enough to be satisfied, so that whoever holds the count
+     * does not have to ask each expectation whether it is satisfied.  The
+     * cardinality must not be changed once the expectation is being tracked.
+     */
+    public void trackSatisfactionWith(AtomicInteger unsatisfiedCount) {
+        this.unsatisfiedCount = unsatisfiedCount;
+        if (!isSatisfied()) {
+            unsatisfiedCount.incrementAndGet();
+        }
+    }
+    
+    public boolean hasOrderingConstraints() {
+        return !orderingConstraints.isEmpty();
+    }
+    
+    /**
+     * Returns whether invoking this expectation depends on or changes state that is
+     * shared with other expectations, such as the state of a sequence or state machine.
+     */
+    public boolean hasOrderingConstraintsOrSideEffects() {
+        return !orderingConstraints.isEmpty() || !sideEffects.isEmpty();
     }
     
     public boolean allowsMoreInvocations() {
-        return cardinality.allowsMoreInvocations(invocationCount);
+        return cardinality.allowsMoreInvocations(invocationCount.get());
     }
     
     public boolean matches(Invocation invocation) {
 		return allowsMoreInvocations()
 			&& objectMatcher.matches(invocation.getInvokedObject())
 			&& methodMatcher.matches(invocation.getInvokedMethod())
-			&& parametersMatcher.matches(invocation.getParametersAsArray())
+			&& parametersMatcher.matchesParametersOf(invocation)
             && isInCorrectOrder();
         
 	}
@@ -160,14 +267,52 @@ public class InvocationExpectation implements Expectation {
     }
 	
     public Object invoke(Invocation invocation) throws Throwable {
-		invocationCount++;
+		countInvocation(invocationCount.incrementAndGet());
+		return invokeClaimed(invocation);
+	}
+    
+    /**
+     * Counts an invocation if the cardinality of this expectation allows more.
+     * Returns <code>false</code>, without counting, if other threads have used
+     * up the expectation since it was matched.  An invocation that has been
+     * claimed must then be performed with {@link #invokeClaimed(Invocation)}.
+     */
+    public boolean claimInvocation() {
+        while (true) {
+            final int count = invocationCount.get();
+            if (!cardinality.allowsMoreInvocations(count)) {
+                return false;
+            }
+            if (invocationCount.compareAndSet(count, count + 1)) {
+                countInvocation(count + 1);
+                return true;
+            }
+        }
+    }
+    
+    void countStubbedInvocation() {
+        invocationCount.incrementAndGet();
+    }
+    
+    private void countInvocation(int count) {
+        final AtomicInteger unsatisfied = unsatisfiedCount;
+        if (unsatisfied != null && !cardinality.isSatisfied(count - 1) && cardinality.isSatisfied(count)) {
+            unsatisfied.decrementAndGet();
+        }
+    }
+    
+    public Object invokeClaimed(Invocation invocation) throws Throwable {
 		performSideEffects();
-		final Object result = action.invoke(invocation);
+		return performAction(invocation);
+    }
+    
+    Object performAction(Invocation invocation) throws Throwable {
+        final Object result = action.invoke(invocation);
         invocation.checkReturnTypeCompatibility(result);
         return result;
-	}
+    }
 
-    private void performSideEffects() {
+    void performSideEffects() {
         for (SideEffect sideEffect : sideEffects) {
             sideEffect.perform();
         }
@@ -181,6 +326,18 @@ public class InvocationExpectation implements Expectation {
         public boolean isCompatibleWith(Object[] parameters) {
             return true;
         }
+
+        public boolean isCompatibleWithParametersOf(Invocation invocation) {
+            return true;
+        }
+
+        public boolean matchesParametersOf(Invocation invocation) {
+            return true;
+        }
+
+        public void describeMismatchOfParametersOf(Invocation invocation, Description mismatch) {
+            describeMismatch(invocation.getParametersAsArray(), mismatch);
+        }
     };
 
 }
@@ -1,7 +1,6 @@
 package org.jmock.internal;
 
 import org.hamcrest.Matcher;
-import org.hamcrest.Matchers;
 import org.jmock.Sequence;
 import org.jmock.api.Action;
 import org.jmock.api.Expectation;
@@ -9,6 +8,7 @@ import org.jmock.api.Invocation;
 import org.jmock.internal.matcher.AllParametersMatcher;
 import org.jmock.internal.matcher.MethodNameMatcher;
 import org.jmock.internal.matcher.MockObjectMatcher;
+import org.jmock.internal.matcher.PrimitiveEqualityMatcher;
 import org.jmock.syntax.MethodClause;
 import org.jmock.syntax.ParametersClause;
 import org.jmock.syntax.ReceiverClause;
@@ -86,6 +86,10 @@ public class InvocationExpectationBuilder
         expectation.addSideEffect(sideEffect);
     }
 
+    public void setPureStub() {
+        expectation.setPureStub(true);
+    }
+
     private <T> T captureExpectedObject(T mockObject) {
         if (!(mockObject instanceof CaptureControl)) {
             throw new IllegalArgumentException("can only set expectations on mock objects");
@@ -125,7 +129,7 @@ public class InvocationExpectationBuilder
                 } else if (primitiveParametersValueToMatchers.containsKey(parameterValue)) {
                     parameterMatchers.add(primitiveParametersValueToMatchers.get(parameterValue));
                 } else {
-                    parameterMatchers.add(Matchers.equalTo(parameterValue));
+                    parameterMatchers.add(PrimitiveEqualityMatcher.equalToParameter(parameterValue));
                 }
             }
             expectation.setParametersMatcher(new AllParametersMatcher(parameterMatchers));
@@ -0,0 +1,134 @@
+package org.jmock.internal;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.hamcrest.Description;
+import org.hamcrest.SelfDescribing;
+import org.jmock.api.Invocation;
+
+/**
+ * The invocations that have been dispatched by a Mockery, kept only so that
+ * they can be described when a test fails.
+ * 
+ * By default every invocation is remembered.  If a limit is set, only the
+ * most recent invocations are remembered, so that a long-running test does
+ * not keep every parameter of every invocation reachable.  The invocations
+ * that have been forgotten are still counted and reported.
+ * 
+ * Consecutive identical invocations are described once, followed by the
+ * number of times they happened.
+ */
+public class InvocationHistory implements SelfDescribing {
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+    
+    private final Deque<Invocation> invocations = new ArrayDeque<Invocation>();
+    private int limit = UNLIMITED;
+    private long forgottenCount = 0;
+    
+    public synchronized void setLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative, was " + limit);
+        }
+        this.limit = limit;
+        forgetOldestBeyondLimit();
+    }
+    
+    public synchronized void add(Invocation invocation) {
+        invocations.addLast(invocation);
+        forgetOldestBeyondLimit();
+    }
+    
+    public synchronized void clear() {
+        invocations.clear();
+        forgottenCount = 0;
+    }
+    
+    private void forgetOldestBeyondLimit() {
+        while (invocations.size() > limit) {
+            invocations.removeFirst();
+            forgottenCount++;
+        }
+    }
+    
+    public synchronized void describeTo(Description description) {
+        if (invocations.isEmpty() && forgottenCount == 0) {
+            description.appendText(" nothing!");
+            return;
+        }
+        
+        if (forgottenCount > 0) {
+            description.appendText("\n  ")
+                       .appendText(forgottenCount + " earlier " + (forgottenCount == 1 ? "invocation" : "invocations") + " not shown");
+        }
+        
+        if (invocations.isEmpty()) {
+            description.appendText("\n");
+        }
+        else {
+            description.appendList("\n  ", "\n  ", "\n", runsOfIdenticalInvocations());
+        }
+    }
+    
+    /*
+     * Consecutive identical invocations are described once, with a count.
+     * The runs are found as they are described so that a truncating
+     * description can stop early.
+     */
+    private Iterable<SelfDescribing> runsOfIdenticalInvocations() {
+        return new Iterable<SelfDescribing>() {
+            public Iterator<SelfDescribing> iterator() {
+                final Iterator<Invocation> remaining = invocations.iterator();
+                return new Iterator<SelfDescribing>() {
+                    private Invocation next = remaining.hasNext() ? remaining.next() : null;
+                    
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+                    
+                    public SelfDescribing next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        
+                        Invocation first = next;
+                        long count = 1;
+                        next = null;
+                        while (remaining.hasNext()) {
+                            Invocation invocation = remaining.next();
+                            if (!invocation.equals(first)) {
+                                next = invocation;
+                                break;
+                            }
+                            count++;
+                        }
+                        return new Run(first, count);
+                    }
+                    
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+    
+    private static class Run implements SelfDescribing {
+        private final Invocation invocation;
+        private final long count;
+        
+        public Run(Invocation invocation, long count) {
+            this.invocation = invocation;
+            this.count = count;
+        }
+        
+        public void describeTo(Description description) {
+            invocation.describeTo(description);
+            if (count > 1) {
+                description.appendText(" x " + Formatting.count(count));
+            }
+        }
+    }
+}
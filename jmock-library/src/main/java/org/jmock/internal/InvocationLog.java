@@ -0,0 +1,125 @@
+package org.jmock.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jmock.api.Invocation;
+
+/**
+ * Logs invocations, in the order in which they happened, so that they can be
+ * replayed later.
+ *
+ * Appending an invocation takes no lock: it claims the next slot of a chain
+ * of fixed-size chunks and stores the invocation there, adding a chunk to the
+ * end of the chain if needed.  Invocations are replayed, by whichever thread
+ * verifies them, from the slot after the last one replayed.  Replayed slots
+ * are cleared and chunks that have been replayed are dropped from the chain,
+ * so the log only holds on to invocations that have not been replayed yet.
+ */
+public class InvocationLog {
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final int chunkSize;
+    private final AtomicInteger count = new AtomicInteger(0);
+    private volatile Chunk head;
+    private volatile Chunk tail;
+    private int replayedCount = 0;
+
+    public InvocationLog() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public InvocationLog(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunk size must be at least 1, was " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.head = this.tail = new Chunk(0, chunkSize);
+    }
+
+    public void append(Invocation invocation) {
+        final int index = count.getAndIncrement();
+        final Chunk chunk = chunkHolding(index);
+        chunk.slots.set(index - chunk.start, invocation);
+    }
+
+    /**
+     * Returns the invocations that have been appended since the last time this
+     * method was called, in the order in which they were appended.
+     *
+     * Waits for invocations that have been started to be appended, so must not be
+     * called while an invocation is being appended by the calling thread.
+     */
+    public synchronized List<Invocation> takeUnreplayed() {
+        final int end = count.get();
+        final List<Invocation> unreplayed = new ArrayList<Invocation>(end - replayedCount);
+        Chunk chunk = head;
+        for (int i = replayedCount; i < end; i++) {
+            while (i >= chunk.end()) {
+                chunk = chunk.next();
+            }
+            unreplayed.add(chunk.take(i - chunk.start));
+        }
+        replayedCount = end;
+        head = chunk;
+        return unreplayed;
+    }
+
+    /*
+     * The tail is only a hint to save walking the chain from its head.  A slot
+     * claimed before the tail moved on is found from the head, which cannot move
+     * past a slot until its invocation has been stored.
+     */
+    private Chunk chunkHolding(int index) {
+        Chunk chunk = tail;
+        if (index < chunk.start) {
+            chunk = head;
+        }
+        while (index >= chunk.end()) {
+            chunk = chunk.next();
+        }
+        return chunk;
+    }
+
+    private class Chunk {
+        public final int start;
+        public final AtomicReferenceArray<Invocation> slots;
+        private final AtomicReference<Chunk> next = new AtomicReference<Chunk>();
+
+        public Chunk(int start, int size) {
+            this.start = start;
+            this.slots = new AtomicReferenceArray<Invocation>(size);
+        }
+
+        public int end() {
+            return start + slots.length();
+        }
+
+        public Chunk next() {
+            Chunk following = next.get();
+            if (following == null) {
+                next.compareAndSet(null, new Chunk(end(), chunkSize));
+                following = next.get();
+                if (tail.start < following.start) {
+                    tail = following;
+                }
+            }
+            return following;
+        }
+
+        /*
+         * Waits for a thread that has claimed the slot to store its invocation.
+         */
+        public Invocation take(int offset) {
+            Invocation invocation;
+            while ((invocation = slots.get(offset)) == null) {
+                Thread.yield();
+            }
+            slots.set(offset, null);
+            return invocation;
+        }
+    }
+}
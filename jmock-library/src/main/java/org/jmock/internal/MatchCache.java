@@ -0,0 +1,148 @@
+package org.jmock.internal;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jmock.api.Invocation;
+
+/**
+ * Remembers which expectation matched each distinct invocation, so that the
+ * expectations that were tried before it need not be tried again.
+ *
+ * Invocations are distinguished by the identity of the mock object, the method
+ * and the identity of their parameters, so that matchers such as
+ * <code>same(...)</code> are given the same answer and the cache never calls
+ * the parameters' own <code>equals</code> and <code>hashCode</code> methods.
+ * Parameters of primitive types are compared by value, because they are boxed
+ * afresh for each invocation, and those that were passed without boxing them are
+ * not boxed to look them up.  A remembered match is only used while
+ * the <var>version</var> it was remembered at is current: the owner of the cache
+ * must change the version whenever a change could make a different expectation
+ * match.  The cache holds at most {@link #MAX_SIZE} invocations, and forgets them
+ * all when it is full.  Until then, it holds strong references to the mock objects
+ * and parameters of the invocations it remembers, which cannot be garbage collected
+ * before the cache is cleared.  The parameter types of each method that has been
+ * invoked are worked out once and kept for the life of the cache.
+ */
+public class MatchCache {
+    public static final int MAX_SIZE = 1024;
+    
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+    private final ConcurrentMap<Method, Class<?>[]> parameterTypes = new ConcurrentHashMap<Method, Class<?>[]>();
+    
+    /**
+     * Returns the expectation that matched an invocation of the same method of the
+     * same mock object with the same parameters as <var>invocation</var> at
+     * <var>version</var>, or <code>null</code> if there is none.
+     */
+    public InvocationExpectation lookUp(Invocation invocation, long version) {
+        final Entry entry = entries.get(keyOf(invocation));
+        return (entry != null && entry.version == version) ? entry.expectation : null;
+    }
+    
+    public void remember(Invocation invocation, InvocationExpectation expectation, long version) {
+        if (entries.size() >= MAX_SIZE) {
+            entries.clear();
+        }
+        entries.put(keyOf(invocation), new Entry(expectation, version));
+    }
+    
+    private Key keyOf(Invocation invocation) {
+        final Method method = invocation.getInvokedMethod();
+        Class<?>[] types = parameterTypes.get(method);
+        if (types == null) {
+            types = method.getParameterTypes();
+            parameterTypes.put(method, types);
+        }
+        return new Key(invocation, types);
+    }
+    
+    public void clear() {
+        entries.clear();
+    }
+    
+    private static class Key {
+        private final Object invokedObject;
+        private final Method method;
+        private final Class<?>[] parameterTypes;
+        private final Object[] parameters;
+        private final long[] unboxedParameters;
+        private final int hashCode;
+        
+        public Key(Invocation invocation, Class<?>[] parameterTypes) {
+            this.invokedObject = invocation.getInvokedObject();
+            this.method = invocation.getInvokedMethod();
+            this.parameterTypes = parameterTypes;
+            
+            final int parameterCount = invocation.getParameterCount();
+            this.parameters = new Object[parameterCount];
+            
+            long[] unboxed = null;
+            int hash = System.identityHashCode(invokedObject) * 31 + method.hashCode();
+            for (int i = 0; i < parameterCount; i++) {
+                if (isPrimitive(i) && invocation.hasUnboxedParameter(i, parameterTypes[i])) {
+                    if (unboxed == null) {
+                        unboxed = new long[parameterCount];
+                    }
+                    final long value = invocation.getUnboxedParameterValue(i);
+                    unboxed[i] = value;
+                    hash = hash * 31 + (int)(value ^ (value >>> 32));
+                }
+                else {
+                    final Object parameter = invocation.getParameter(i);
+                    parameters[i] = parameter;
+                    hash = hash * 31 + ((isPrimitive(i) && parameter != null) ? parameter.hashCode() : System.identityHashCode(parameter));
+                }
+            }
+            this.unboxedParameters = unboxed;
+            this.hashCode = hash;
+        }
+        
+        private boolean isPrimitive(int i) {
+            return i < parameterTypes.length && parameterTypes[i].isPrimitive();
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            
+            final Key other = (Key)o;
+            if (hashCode != other.hashCode || invokedObject != other.invokedObject 
+                || !method.equals(other.method) || parameters.length != other.parameters.length)
+            {
+                return false;
+            }
+            for (int i = 0; i < parameters.length; i++) {
+                final boolean isSame = (isPrimitive(i) && parameters[i] != null)
+                    ? parameters[i].equals(other.parameters[i]) 
+                    : parameters[i] == other.parameters[i] && unboxedParameter(i) == other.unboxedParameter(i);
+                if (!isSame) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private long unboxedParameter(int i) {
+            return (unboxedParameters != null) ? unboxedParameters[i] : 0;
+        }
+    }
+    
+    private static class Entry {
+        public final InvocationExpectation expectation;
+        public final long version;
+        
+        public Entry(InvocationExpectation expectation, long version) {
+            this.expectation = expectation;
+            this.version = version;
+        }
+    }
+}
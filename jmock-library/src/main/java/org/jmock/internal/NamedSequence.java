@@ -12,11 +12,17 @@ import org.jmock.api.Expectation;
  * 
  * Invocations can be constrained to occur in strict order defined by a sequence.
  * 
+ * An expectation that has been satisfied stays satisfied, so the sequence
+ * remembers how many of its first expectations are satisfied and only checks
+ * the expectations after them.  Each ordering check is therefore a constant-time
+ * operation, however long the sequence.
+ * 
  * @author nat
  */
 public class NamedSequence implements Sequence {
     private final String name;
     private List<Expectation> elements = new ArrayList<Expectation>();
+    private volatile int satisfiedPrefixLength = 0;
     
     public NamedSequence(String name) {
         this.name = name;
@@ -33,11 +39,19 @@ public class NamedSequence implements Sequence {
         expectation.addOrderingConstraint(new InSequenceOrderingConstraint(this, index));
     }
     
+    /*
+     * Threads that race to advance the prefix can only make it shorter than it
+     * could be, which is corrected by the next check.
+     */
     private boolean isSatisfiedToIndex(int index) {
-        for (int i = 0; i < index; i++) {
-            if (!elements.get(i).isSatisfied()) return false;
+        int satisfied = satisfiedPrefixLength;
+        while (satisfied < index && elements.get(satisfied).isSatisfied()) {
+            satisfied++;
+        }
+        if (satisfied > satisfiedPrefixLength) {
+            satisfiedPrefixLength = satisfied;
         }
-        return true;
+        return satisfied >= index;
     }
     
     private static class InSequenceOrderingConstraint implements OrderingConstraint {
@@ -0,0 +1,59 @@
+package org.jmock.internal;
+
+import java.lang.reflect.Method;
+
+/**
+ * The methods of {@link Object} that mock objects fake.
+ *
+ * Classifying a method does not copy its parameter types unless it has the
+ * name of one of these methods but is not declared by Object itself, so it is
+ * cheap enough to do on every invocation without remembering the answer.
+ */
+public enum ObjectMethod {
+    HASH_CODE, TO_STRING, EQUALS, FINALIZE, NONE;
+
+    public static ObjectMethod of(Method method) {
+        final String name = method.getName();
+        final ObjectMethod named = named(name);
+        if (named == NONE || method.getDeclaringClass() == Object.class) {
+            return named;
+        }
+        return hasSignatureOf(method, named) ? named : NONE;
+    }
+
+    private static ObjectMethod named(String name) {
+        if (name.equals("hashCode")) {
+            return HASH_CODE;
+        }
+        else if (name.equals("toString")) {
+            return TO_STRING;
+        }
+        else if (name.equals("equals")) {
+            return EQUALS;
+        }
+        else if (name.equals("finalize")) {
+            return FINALIZE;
+        }
+        else {
+            return NONE;
+        }
+    }
+
+    private static boolean hasSignatureOf(Method method, ObjectMethod objectMethod) {
+        final Class<?> returnType = method.getReturnType();
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+
+        switch (objectMethod) {
+        case HASH_CODE:
+            return returnType == int.class && parameterTypes.length == 0;
+        case TO_STRING:
+            return returnType == String.class && parameterTypes.length == 0;
+        case EQUALS:
+            return returnType == boolean.class && parameterTypes.length == 1 && parameterTypes[0] == Object.class;
+        case FINALIZE:
+            return returnType == void.class && parameterTypes.length == 0;
+        default:
+            return false;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package org.jmock.internal;
 
+import org.hamcrest.Description;
 import org.hamcrest.Matcher;
+import org.jmock.api.Invocation;
 
 public interface ParametersMatcher extends Matcher<Object[]> {
     /**
@@ -9,4 +11,28 @@ public interface ParametersMatcher extends Matcher<Object[]> {
      * @return true iff the parameters may be relevant.
      */
     boolean isCompatibleWith(Object[] parameters); 
+    
+    /**
+     * Is this matcher likely to be relevant to the parameters of the given invocation?
+     * The parameters are not copied out of the invocation.
+     * @param invocation The invocation whose parameters are to be matched
+     * @return true iff the parameters may be relevant.
+     */
+    boolean isCompatibleWithParametersOf(Invocation invocation);
+    
+    /**
+     * Does this matcher match the parameters of the given invocation?
+     * The parameters are not copied out of the invocation.
+     * @param invocation The invocation whose parameters are to be matched
+     * @return true iff the parameters match.
+     */
+    boolean matchesParametersOf(Invocation invocation);
+    
+    /**
+     * Describes why the parameters of the given invocation do not match.
+     * The parameters are not copied out of the invocation.
+     * @param invocation The invocation whose parameters did not match
+     * @param mismatch The description to append to
+     */
+    void describeMismatchOfParametersOf(Invocation invocation, Description mismatch);
 }
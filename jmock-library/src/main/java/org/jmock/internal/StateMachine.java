@@ -1,17 +1,47 @@
 package org.jmock.internal;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.hamcrest.Description;
 import org.hamcrest.StringDescription;
 import org.jmock.States;
 
+/**
+ * A state machine that identifies its states by integer ids.
+ * 
+ * Each state name is given an id the first time it is used, so testing whether a
+ * state is active compares integers, not strings.  The machine also counts how many
+ * times it has changed state, so that code can find out whether the state has changed
+ * since it last looked without testing any states.
+ */
 public class StateMachine implements States {
+    private static final int NO_STATE = -1;
+    
     private final String name;
-    private String currentState = null;
+    private final Map<String, Integer> stateIds = new HashMap<String, Integer>();
+    private final List<String> stateNames = new ArrayList<String>();
+    private volatile int currentState = NO_STATE;
+    private final AtomicInteger version = new AtomicInteger(0);
     
     public StateMachine(String name) {
         this.name = name;
     }
     
+    /**
+     * Creates a state machine whose states are declared up front.  The id of
+     * each declared state is its position in <var>declaredStates</var>.
+     */
+    public StateMachine(String name, String... declaredStates) {
+        this(name);
+        for (String state : declaredStates) {
+            idOf(state);
+        }
+    }
+    
     @Override
     public String toString() {
         return StringDescription.asString(this);
@@ -23,17 +53,26 @@ public class StateMachine implements States {
     }
     
     public void become(String nextState) {
-        currentState = nextState;
+        enter(idOf(nextState));
     }
-
+    
+    /**
+     * Returns the number of times the machine has changed state.  If the version
+     * has not changed, no state predicate of the machine has changed its value.
+     */
+    public int version() {
+        return version.get();
+    }
+    
     public State is(final String state) {
+        final int id = idOf(state);
         return new State() {
             public void activate() {
-                currentState = state;
+                enter(id);
             }
 
             public boolean isActive() {
-                return state.equals(currentState);
+                return currentState == id;
             }
 
             public void describeTo(Description description) {
@@ -43,9 +82,10 @@ public class StateMachine implements States {
     }
     
     public StatePredicate isNot(final String state) {
+        final int id = idOf(state);
         return new StatePredicate() {
             public boolean isActive() {
-                return !state.equals(currentState);
+                return currentState != id;
             }
 
             public void describeTo(Description description) {
@@ -55,7 +95,37 @@ public class StateMachine implements States {
     }
     
     public void describeTo(Description description) {
+        final int state = currentState;
         description.appendText(name)
-                   .appendText(currentState == null ? " has no current state" : (" is " + currentState));
+                   .appendText(state == NO_STATE ? " has no current state" : (" is " + nameOf(state)));
+    }
+    
+    /*
+     * The version is incremented after the state changes, so anything that
+     * read the version before it looked at the state sees a new version.
+     */
+    private void enter(int id) {
+        if (currentState != id) {
+            currentState = id;
+            version.incrementAndGet();
+        }
+    }
+    
+    private synchronized int idOf(String state) {
+        if (state == null) {
+            return NO_STATE;
+        }
+        
+        Integer id = stateIds.get(state);
+        if (id == null) {
+            id = stateNames.size();
+            stateIds.put(state, id);
+            stateNames.add(state);
+        }
+        return id;
+    }
+    
+    private synchronized String nameOf(int id) {
+        return stateNames.get(id);
     }
 }
@@ -0,0 +1,100 @@
+package org.jmock.internal;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jmock.api.Invocation;
+
+/**
+ * Answers invocations of pure stubs without taking any lock.
+ *
+ * A pure stub always returns the same value and has no ordering constraints or
+ * side effects, so it can be answered by looking it up by mock object, method
+ * and parameters.  Stubs are tried in the order in which they were added.
+ *
+ * The table is copied whenever a stub is added, which only happens while
+ * expectations are being set up, so that looking up a stub only reads
+ * tables that are never changed once they have been published.  Mock objects
+ * are looked up by identity so that looking up a stub never invokes the
+ * mock objects themselves.
+ */
+public class StubTable {
+    private static final Stub[] NO_STUBS = new Stub[0];
+
+    private volatile Map<Object, Map<Method, Stub[]>> stubsByMockObject = Collections.emptyMap();
+
+    public synchronized void add(Object mockObject, Method method, ParametersMatcher parametersMatcher,
+                                 Object result, InvocationExpectation expectation)
+    {
+        Map<Object, Map<Method, Stub[]>> newStubsByMockObject =
+            new IdentityHashMap<Object, Map<Method, Stub[]>>(stubsByMockObject);
+
+        Map<Method, Stub[]> oldStubsByMethod = stubsByMockObject.get(mockObject);
+        Map<Method, Stub[]> newStubsByMethod = (oldStubsByMethod == null)
+            ? new HashMap<Method, Stub[]>()
+            : new HashMap<Method, Stub[]>(oldStubsByMethod);
+
+        Stub[] oldStubs = newStubsByMethod.get(method);
+        if (oldStubs == null) {
+            oldStubs = NO_STUBS;
+        }
+        Stub[] newStubs = new Stub[oldStubs.length + 1];
+        System.arraycopy(oldStubs, 0, newStubs, 0, oldStubs.length);
+        newStubs[oldStubs.length] = new Stub(parametersMatcher, result, expectation);
+
+        newStubsByMethod.put(method, newStubs);
+        newStubsByMockObject.put(mockObject, newStubsByMethod);
+        stubsByMockObject = newStubsByMockObject;
+    }
+
+    public synchronized void clear() {
+        stubsByMockObject = Collections.emptyMap();
+    }
+
+    /**
+     * Returns the first stub that answers <var>invocation</var>, or
+     * <code>null</code> if none do.
+     */
+    public Stub stubFor(Invocation invocation) {
+        final Map<Method, Stub[]> stubsByMethod = stubsByMockObject.get(invocation.getInvokedObject());
+        if (stubsByMethod == null) {
+            return null;
+        }
+
+        final Stub[] stubs = stubsByMethod.get(invocation.getInvokedMethod());
+        if (stubs == null) {
+            return null;
+        }
+
+        for (Stub stub : stubs) {
+            if (stub.parametersMatcher.matchesParametersOf(invocation)) {
+                return stub;
+            }
+        }
+        return null;
+    }
+
+    public static class Stub {
+        private final ParametersMatcher parametersMatcher;
+        private final Object result;
+        private final InvocationExpectation expectation;
+
+        public Stub(ParametersMatcher parametersMatcher, Object result, InvocationExpectation expectation) {
+            this.parametersMatcher = parametersMatcher;
+            this.result = result;
+            this.expectation = expectation;
+        }
+
+        /**
+         * Counts an invocation against the stub's expectation, so that it is
+         * described as having been invoked, and returns the stubbed result.
+         */
+        public Object invoke() {
+            expectation.countStubbedInvocation();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.jmock.internal;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.jmock.api.Action;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.objenesis.Objenesis;
+import org.objenesis.ObjenesisStd;
+import org.objenesis.instantiator.ObjectInstantiator;
+
+/**
+ * Creates the stub values that stand in for parameters specified by
+ * matchers while expectations are being captured.
+ * 
+ * Every stub value is a new object, so that stubs can be told apart by
+ * identity, but how to create the stubs of a type is worked out only once
+ * per type.  Classes are looked up by name with the class loader of jMock
+ * and then, if jMock cannot see them, with the context class loader of the
+ * current thread.  Both caches let go of classes whose class loaders are
+ * no longer used.
+ */
+public class StubValueFactory {
+    public static final StubValueFactory INSTANCE = new StubValueFactory();
+    
+    private final Objenesis objenesis = new ObjenesisStd(false);
+    private final Action imposterAction = new ReturnDefaultValueAction(); // bad hashCode - always returns 0
+    
+    private final Map<ClassLoader, Map<String, Reference<Class<?>>>> classesByContextClassLoader =
+        new WeakHashMap<ClassLoader, Map<String, Reference<Class<?>>>>();
+    private final Map<Class<?>, Reference<StubTemplate>> templates =
+        new WeakHashMap<Class<?>, Reference<StubTemplate>>();
+    
+    public synchronized Class<?> classNamed(String className) throws ClassNotFoundException {
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        
+        Map<String, Reference<Class<?>>> classesByName = classesByContextClassLoader.get(contextClassLoader);
+        if (classesByName == null) {
+            classesByName = new HashMap<String, Reference<Class<?>>>();
+            classesByContextClassLoader.put(contextClassLoader, classesByName);
+        }
+        
+        final Reference<Class<?>> existing = classesByName.get(className);
+        Class<?> clazz = existing == null ? null : existing.get();
+        if (clazz == null) {
+            clazz = loadClass(className, contextClassLoader);
+            classesByName.put(className, new WeakReference<Class<?>>(clazz));
+        }
+        return clazz;
+    }
+    
+    private Class<?> loadClass(String className, ClassLoader contextClassLoader) throws ClassNotFoundException {
+        try {
+            return Class.forName(className);
+        }
+        catch (ClassNotFoundException e) {
+            if (contextClassLoader == null) {
+                throw e;
+            }
+            return Class.forName(className, false, contextClassLoader);
+        }
+    }
+    
+    public Object newStubValue(Class<?> type) {
+        return templateFor(type).newStubValue();
+    }
+    
+    private synchronized StubTemplate templateFor(Class<?> type) {
+        final Reference<StubTemplate> existing = templates.get(type);
+        StubTemplate template = existing == null ? null : existing.get();
+        if (template == null) {
+            template = createTemplateFor(type);
+            templates.put(type, new SoftReference<StubTemplate>(template));
+        }
+        return template;
+    }
+    
+    private StubTemplate createTemplateFor(final Class<?> type) {
+        if (type.isArray()) {
+            final Class<?> componentType = type.getComponentType();
+            return new StubTemplate() {
+                public Object newStubValue() {
+                    return Array.newInstance(componentType, 0);
+                }
+            };
+        }
+        else if (Modifier.isAbstract(type.getModifiers()) || Modifier.isInterface(type.getModifiers())) {
+            return new StubTemplate() {
+                public Object newStubValue() {
+                    return ClassImposteriser.INSTANCE.imposterise(imposterAction, type);
+                }
+            };
+        }
+        else {
+            final ObjectInstantiator instantiator = objenesis.getInstantiatorOf(type);
+            return new StubTemplate() {
+                public Object newStubValue() {
+                    return instantiator.newInstance();
+                }
+            };
+        }
+    }
+    
+    private interface StubTemplate {
+        Object newStubValue();
+    }
+}
@@ -0,0 +1,269 @@
+package org.jmock.internal;
+
+import java.lang.reflect.Array;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.hamcrest.Description;
+import org.hamcrest.SelfDescribing;
+import org.hamcrest.StringDescription;
+
+/**
+ * A Description that limits how much it appends to another Description, so
+ * that describing a failure takes bounded time and memory however large the
+ * values that were passed to the mock objects.
+ *
+ * Each value is limited to <var>maxValueLength</var> characters and arrays,
+ * collections and maps to their first <var>maxElements</var> elements.
+ * Collections and maps, including those nested in them, whose <code>toString</code>
+ * method is inherited from {@link AbstractCollection} or {@link AbstractMap} are
+ * described element by element, in the same format but without calling it, so
+ * that each element is limited separately rather than the whole collection being
+ * rendered before it is truncated.  A collection or map that contains itself,
+ * directly or through others, is described as "(this Collection)" or "(this Map)"
+ * where it recurs.  Other values, including collections that describe themselves
+ * differently, are rendered by their own <code>toString</code> method, which cannot
+ * be interrupted, and then truncated.  Once <var>maxLength</var> characters have
+ * been appended, the rest of the description is dropped and the remaining
+ * items of any list being described are not visited at all.
+ */
+public class TruncatingDescription implements Description {
+    public static final int DEFAULT_MAX_VALUE_LENGTH = 1000;
+    public static final int DEFAULT_MAX_ELEMENTS = 100;
+    public static final int DEFAULT_MAX_LENGTH = 64 * 1024;
+
+    private static final String ELLIPSIS = "...";
+
+    private final Description target;
+    private final int maxValueLength;
+    private final int maxElements;
+    private final int maxLength;
+
+    private int length = 0;
+    private boolean isTruncated = false;
+    
+    private final Map<Object, Object> containersBeingDescribed = new IdentityHashMap<Object, Object>();
+    private final Map<Class<?>, Boolean> describesElementByElement = new HashMap<Class<?>, Boolean>();
+
+    public TruncatingDescription(Description target) {
+        this(target, DEFAULT_MAX_VALUE_LENGTH, DEFAULT_MAX_ELEMENTS, DEFAULT_MAX_LENGTH);
+    }
+
+    public TruncatingDescription(Description target, int maxValueLength, int maxElements, int maxLength) {
+        this.target = target;
+        this.maxValueLength = maxValueLength;
+        this.maxElements = maxElements;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns <var>description</var> if it is already truncating, so that
+     * nested descriptions share one budget.
+     */
+    public static TruncatingDescription truncating(Description description) {
+        return (description instanceof TruncatingDescription)
+             ? (TruncatingDescription)description
+             : new TruncatingDescription(description);
+    }
+
+    public boolean isTruncated() {
+        return isTruncated;
+    }
+
+    public Description appendText(String text) {
+        if (isTruncated) {
+            return this;
+        }
+
+        if (length + text.length() > maxLength) {
+            target.appendText(text.substring(0, maxLength - length));
+            target.appendText(ELLIPSIS + " (description truncated)");
+            length = maxLength;
+            isTruncated = true;
+        }
+        else {
+            target.appendText(text);
+            length += text.length();
+        }
+        return this;
+    }
+
+    public Description appendDescriptionOf(SelfDescribing value) {
+        if (!isTruncated) {
+            value.describeTo(this);
+        }
+        return this;
+    }
+
+    public Description appendValue(Object value) {
+        if (isTruncated) {
+            return this;
+        }
+
+        if (value == null || value instanceof Character || value instanceof Short
+            || value instanceof Long || value instanceof Float)
+        {
+            appendText(StringDescription.toString(new ValueOf(value)));
+        }
+        else if (value instanceof String) {
+            appendText(StringDescription.toString(new ValueOf(truncated((String)value))));
+        }
+        else if (value.getClass().isArray()) {
+            appendArray(value);
+        }
+        else if (isDescribedElementByElement(value)) {
+            appendText("<");
+            appendContents(value);
+            appendText(">");
+        }
+        else {
+            appendText("<" + truncated(String.valueOf(value)) + ">");
+        }
+        return this;
+    }
+
+    public <T> Description appendValueList(String start, String separator, String end, T... values) {
+        return appendValueList(start, separator, end, Arrays.asList(values));
+    }
+
+    public <T> Description appendValueList(String start, String separator, String end, Iterable<T> values) {
+        appendText(start);
+        String nextSeparator = "";
+        for (Iterator<T> i = values.iterator(); i.hasNext() && !isTruncated;) {
+            appendText(nextSeparator);
+            appendValue(i.next());
+            nextSeparator = separator;
+        }
+        return appendText(end);
+    }
+
+    public Description appendList(String start, String separator, String end, Iterable<? extends SelfDescribing> values) {
+        appendText(start);
+        String nextSeparator = "";
+        for (Iterator<? extends SelfDescribing> i = values.iterator(); i.hasNext() && !isTruncated;) {
+            appendText(nextSeparator);
+            appendDescriptionOf(i.next());
+            nextSeparator = separator;
+        }
+        return appendText(end);
+    }
+
+    private void appendArray(Object array) {
+        int arrayLength = Array.getLength(array);
+
+        appendText("[");
+        for (int i = 0; i < arrayLength && i < maxElements && !isTruncated; i++) {
+            if (i > 0) {
+                appendText(", ");
+            }
+            appendValue(Array.get(array, i));
+        }
+        appendRemainder(arrayLength);
+        appendText("]");
+    }
+
+    private void appendContents(Object value) {
+        if (!isDescribedElementByElement(value)) {
+            appendText(truncated(String.valueOf(value)));
+        }
+        else if (containersBeingDescribed.containsKey(value)) {
+            appendText((value instanceof Map<?, ?>) ? "(this Map)" : "(this Collection)");
+        }
+        else {
+            containersBeingDescribed.put(value, value);
+            try {
+                if (value instanceof Collection<?>) {
+                    appendElements((Collection<?>)value);
+                }
+                else {
+                    appendEntries((Map<?, ?>)value);
+                }
+            }
+            finally {
+                containersBeingDescribed.remove(value);
+            }
+        }
+    }
+    
+    private boolean isDescribedElementByElement(Object value) {
+        if (!(value instanceof Collection<?> || value instanceof Map<?, ?>)) {
+            return false;
+        }
+        
+        final Class<?> type = value.getClass();
+        Boolean answer = describesElementByElement.get(type);
+        if (answer == null) {
+            answer = inheritsToStringFrom(type, (value instanceof Collection<?>) ? AbstractCollection.class : AbstractMap.class);
+            describesElementByElement.put(type, answer);
+        }
+        return answer;
+    }
+    
+    private static boolean inheritsToStringFrom(Class<?> type, Class<?> superclass) {
+        try {
+            return type.getMethod("toString").getDeclaringClass() == superclass;
+        }
+        catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private void appendElements(Collection<?> elements) {
+        appendText("[");
+        Iterator<?> iterator = elements.iterator();
+        for (int i = 0; i < maxElements && iterator.hasNext() && !isTruncated; i++) {
+            if (i > 0) {
+                appendText(", ");
+            }
+            appendContents(iterator.next());
+        }
+        appendRemainder(elements.size());
+        appendText("]");
+    }
+
+    private void appendEntries(Map<?, ?> map) {
+        appendText("{");
+        Iterator<? extends Map.Entry<?, ?>> iterator = map.entrySet().iterator();
+        for (int i = 0; i < maxElements && iterator.hasNext() && !isTruncated; i++) {
+            if (i > 0) {
+                appendText(", ");
+            }
+            Map.Entry<?, ?> entry = iterator.next();
+            appendContents(entry.getKey());
+            appendText("=");
+            appendContents(entry.getValue());
+        }
+        appendRemainder(map.size());
+        appendText("}");
+    }
+
+    private void appendRemainder(int size) {
+        if (size > maxElements) {
+            appendText(", " + ELLIPSIS + " " + Formatting.count(size - maxElements) + " more");
+        }
+    }
+
+    private String truncated(String s) {
+        return (s.length() > maxValueLength)
+             ? s.substring(0, maxValueLength) + ELLIPSIS
+             : s;
+    }
+
+    private static class ValueOf implements SelfDescribing {
+        private final Object value;
+
+        public ValueOf(Object value) {
+            this.value = value;
+        }
+
+        public void describeTo(Description description) {
+            description.appendValue(value);
+        }
+    }
+}
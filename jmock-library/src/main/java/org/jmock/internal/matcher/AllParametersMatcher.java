@@ -7,7 +7,7 @@ import java.util.List;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.TypeSafeDiagnosingMatcher;
-import org.hamcrest.core.IsEqual;
+import org.jmock.api.Invocation;
 import org.jmock.internal.ParametersMatcher;
 
 public class AllParametersMatcher extends TypeSafeDiagnosingMatcher<Object[]>  implements ParametersMatcher {
@@ -26,6 +26,39 @@ public class AllParametersMatcher extends TypeSafeDiagnosingMatcher<Object[]>  i
         return elementMatchers.length == parameters.length;
     }
 
+    public boolean isCompatibleWithParametersOf(Invocation invocation) {
+        return elementMatchers.length == invocation.getParameterCount();
+    }
+
+    public boolean matchesParametersOf(Invocation invocation) {
+        if (!isCompatibleWithParametersOf(invocation)) {
+            return false;
+        }
+        boolean result = true;
+        for (int i = 0; i < elementMatchers.length; i++) {
+            result &= matchesParameterOf(invocation, i);
+        }
+        return result;
+    }
+
+    private boolean matchesParameterOf(Invocation invocation, int i) {
+        final Matcher<Object> matcher = elementMatchers[i];
+        if (matcher instanceof PrimitiveEqualityMatcher) {
+            return ((PrimitiveEqualityMatcher)matcher).matchesParameterOf(invocation, i);
+        }
+        return matcher.matches(invocation.getParameter(i));
+    }
+
+    public void describeMismatchOfParametersOf(Invocation invocation, Description mismatch) {
+        if (!isCompatibleWithParametersOf(invocation)) {
+            describeMismatch(invocation.getParametersAsArray(), mismatch);
+            return;
+        }
+        for (int i = 0; i < elementMatchers.length; i++) {
+            matchesParameter(invocation.getParameter(i), elementMatchers[i], mismatch, i);
+        }
+    }
+
     @Override
     public boolean matchesSafely(Object[] parameters, Description mismatch) {
         return matchesNumberOfParameters(parameters, mismatch)
@@ -71,7 +104,7 @@ public class AllParametersMatcher extends TypeSafeDiagnosingMatcher<Object[]>  i
     private static Matcher<Object>[] equalMatchersFor(Object[] expectedValues) {
         Matcher<Object>[] matchers = new Matcher[expectedValues.length];
         for (int i = 0; i < expectedValues.length; i++) {
-            matchers[i] = new IsEqual<Object>(expectedValues[i]);
+            matchers[i] = PrimitiveEqualityMatcher.equalToParameter(expectedValues[i]);
         }
         return matchers;
     }
@@ -2,18 +2,25 @@ package org.jmock.internal.matcher;
 
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.hamcrest.Description;
 import org.hamcrest.TypeSafeMatcher;
 
 public class MethodMatcher extends TypeSafeMatcher<Method> {
     private Method expectedMethod;
+    private final Map<Method, Boolean> matchesByMethod = new ConcurrentHashMap<Method, Boolean>();
 
     public MethodMatcher(Method expectedMethod) {
         super(Method.class);
         this.expectedMethod = expectedMethod;
     }
 
+    public Method getExpectedMethod() {
+        return expectedMethod;
+    }
+
 	/**
 	 * It's not at all clear to me that the call to
 	 * {@link #sameResolvedMethod(Method, Method)} is necessary. By my reading
@@ -28,12 +35,21 @@ public class MethodMatcher extends TypeSafeMatcher<Method> {
 	 * since the {@link Class#getDeclaredMethod(String, Class...)} call seems
 	 * somewhat involved, it may make sense to use it as a filter.
 	 * 
+	 * The answer depends only on <code>m</code> itself, so it is remembered for
+	 * each {@link Method} that has been matched.  Matching the same method again
+	 * is then a single map lookup.
+	 * 
 	 * @see org.hamcrest.TypeSafeMatcher#matchesSafely(java.lang.Object)
 	 */
 	@Override
 	public boolean matchesSafely(Method m) {
-		return sameSignature(expectedMethod, m)
-				&& sameResolvedMethod(expectedMethod, m);
+		Boolean matches = matchesByMethod.get(m);
+		if (matches == null) {
+			matches = sameSignature(expectedMethod, m)
+					&& sameResolvedMethod(expectedMethod, m);
+			matchesByMethod.put(m, matches);
+		}
+		return matches;
 	}
 
 	private static boolean sameSignature(Method a, Method b) {
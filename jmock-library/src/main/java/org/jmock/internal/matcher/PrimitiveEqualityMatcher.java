@@ -0,0 +1,52 @@
+package org.jmock.internal.matcher;
+
+import org.hamcrest.core.IsEqual;
+import org.jmock.api.Invocation;
+
+/**
+ * Matches a parameter equal to an <code>int</code>, <code>long</code> or
+ * <code>double</code> value.  If the parameter was passed without boxing
+ * it, the primitive values are compared without boxing them.
+ */
+public class PrimitiveEqualityMatcher extends IsEqual<Object> {
+    private final Class<?> primitiveType;
+    private final long expectedValue;
+
+    private PrimitiveEqualityMatcher(Object value, Class<?> primitiveType, long expectedValue) {
+        super(value);
+        this.primitiveType = primitiveType;
+        this.expectedValue = expectedValue;
+    }
+
+    /**
+     * Returns a matcher for a parameter equal to <var>value</var>, which compares
+     * primitive values directly if it can.
+     */
+    public static IsEqual<Object> equalToParameter(Object value) {
+        if (value instanceof Integer) {
+            return new PrimitiveEqualityMatcher(value, int.class, ((Integer)value).intValue());
+        }
+        else if (value instanceof Long) {
+            return new PrimitiveEqualityMatcher(value, long.class, ((Long)value).longValue());
+        }
+        else if (value instanceof Double) {
+            return new PrimitiveEqualityMatcher(value, double.class, Double.doubleToLongBits((Double)value));
+        }
+        else {
+            return new IsEqual<Object>(value);
+        }
+    }
+
+    public boolean matchesParameterOf(Invocation invocation, int i) {
+        if (!invocation.hasUnboxedParameter(i, primitiveType)) {
+            return matches(invocation.getParameter(i));
+        }
+
+        long actualValue = invocation.getUnboxedParameterValue(i);
+        if (primitiveType == double.class) {
+            // Compare as Double.equals does, so that all NaNs are equal
+            actualValue = Double.doubleToLongBits(Double.longBitsToDouble(actualValue));
+        }
+        return actualValue == expectedValue;
+    }
+}
@@ -0,0 +1,40 @@
+package org.jmock.internal.matcher;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+
+/**
+ * A matcher that knows the type of the values it is meant to match.
+ * 
+ * When it is passed to <code>with</code>, the expectation builder uses the
+ * type to create a stub parameter value of the right class straight away,
+ * instead of discovering the class from a failed cast and running the
+ * expectation block again.
+ */
+public class TypedMatcher<T> extends BaseMatcher<T> {
+    private final Class<?> expectedType;
+    private final Matcher<?> matcher;
+    
+    public TypedMatcher(Class<?> expectedType, Matcher<?> matcher) {
+        this.expectedType = expectedType;
+        this.matcher = matcher;
+    }
+    
+    public Class<?> getExpectedType() {
+        return expectedType;
+    }
+    
+    public boolean matches(Object item) {
+        return matcher.matches(item);
+    }
+    
+    @Override
+    public void describeMismatch(Object item, Description mismatchDescription) {
+        matcher.describeMismatch(item, mismatchDescription);
+    }
+    
+    public void describeTo(Description description) {
+        matcher.describeTo(description);
+    }
+}
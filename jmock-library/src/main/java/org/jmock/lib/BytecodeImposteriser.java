@@ -0,0 +1,478 @@
+package org.jmock.lib;
+
+import static net.sf.cglib.asm.Opcodes.AALOAD;
+import static net.sf.cglib.asm.Opcodes.AASTORE;
+import static net.sf.cglib.asm.Opcodes.ACC_FINAL;
+import static net.sf.cglib.asm.Opcodes.ACC_PRIVATE;
+import static net.sf.cglib.asm.Opcodes.ACC_PUBLIC;
+import static net.sf.cglib.asm.Opcodes.ACC_STATIC;
+import static net.sf.cglib.asm.Opcodes.ACC_SUPER;
+import static net.sf.cglib.asm.Opcodes.ACONST_NULL;
+import static net.sf.cglib.asm.Opcodes.ALOAD;
+import static net.sf.cglib.asm.Opcodes.ANEWARRAY;
+import static net.sf.cglib.asm.Opcodes.ARETURN;
+import static net.sf.cglib.asm.Opcodes.ASTORE;
+import static net.sf.cglib.asm.Opcodes.CHECKCAST;
+import static net.sf.cglib.asm.Opcodes.DUP;
+import static net.sf.cglib.asm.Opcodes.GETFIELD;
+import static net.sf.cglib.asm.Opcodes.GETSTATIC;
+import static net.sf.cglib.asm.Opcodes.I2L;
+import static net.sf.cglib.asm.Opcodes.ILOAD;
+import static net.sf.cglib.asm.Opcodes.INVOKEINTERFACE;
+import static net.sf.cglib.asm.Opcodes.INVOKESPECIAL;
+import static net.sf.cglib.asm.Opcodes.INVOKESTATIC;
+import static net.sf.cglib.asm.Opcodes.INVOKEVIRTUAL;
+import static net.sf.cglib.asm.Opcodes.IRETURN;
+import static net.sf.cglib.asm.Opcodes.LASTORE;
+import static net.sf.cglib.asm.Opcodes.NEW;
+import static net.sf.cglib.asm.Opcodes.NEWARRAY;
+import static net.sf.cglib.asm.Opcodes.POP;
+import static net.sf.cglib.asm.Opcodes.PUTFIELD;
+import static net.sf.cglib.asm.Opcodes.PUTSTATIC;
+import static net.sf.cglib.asm.Opcodes.RETURN;
+import static net.sf.cglib.asm.Opcodes.T_LONG;
+import static net.sf.cglib.asm.Opcodes.V1_5;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.sf.cglib.asm.ClassWriter;
+import net.sf.cglib.asm.MethodVisitor;
+import net.sf.cglib.asm.Type;
+import net.sf.cglib.core.ReflectUtils;
+
+import org.jmock.api.Imposteriser;
+import org.jmock.api.Invocation;
+import org.jmock.api.Invokable;
+import org.jmock.internal.CombineClassLoader;
+
+/**
+ * An {@link org.jmock.api.Imposteriser} that generates a class for each combination
+ * of types it imposterises, instead of using the {@link java.lang.reflect.Proxy} class
+ * of the Java Reflection API.
+ *
+ * Each method of a generated class holds its {@link Method} in a static constant and
+ * passes the {@link Invocation} straight to the {@link Invokable}, so calls do not go
+ * through an {@link java.lang.reflect.InvocationHandler} or look up the invoked method.
+ * Parameters of type <code>int</code>, <code>long</code> and <code>double</code> are
+ * passed to the Invocation without boxing them.
+ * Generated classes are reused for as long as they are in use.  Each holds its own
+ * constructor in a static constant, so that creating an imposter does not look
+ * the constructor up.
+ *
+ * Like the {@link JavaReflectionImposteriser}, this can only imposterise interfaces.
+ * Unlike it, exceptions thrown by the Invokable are thrown from the imposter as they are
+ * and are not wrapped in an {@link java.lang.reflect.UndeclaredThrowableException}.
+ *
+ * Use it by calling {@link org.jmock.Mockery#setImposteriser(Imposteriser)}.
+ */
+public class BytecodeImposteriser extends AbstractImposteriser {
+    public static final Imposteriser INSTANCE = new BytecodeImposteriser();
+
+    private static final String INVOKABLE = Type.getInternalName(Invokable.class);
+    private static final String INVOCATION = Type.getInternalName(Invocation.class);
+    private static final String OBJECT = Type.getInternalName(Object.class);
+    private static final String INVOKABLE_FIELD = "invokable";
+    private static final String METHOD_FIELD_PREFIX = "method";
+    private static final String PARAMETER_TYPES_FIELD_PREFIX = "parameterTypes";
+    private static final String CONSTRUCTOR_FIELD = "constructor";
+
+    private static final Map<String, Method[]> methodsOfClassesBeingInitialised = new HashMap<String, Method[]>();
+    private static int classCount = 0;
+
+    private final Map<Class<?>, Map<List<Class<?>>, Reference<Constructor<?>>>> imposterConstructors =
+        new WeakHashMap<Class<?>, Map<List<Class<?>>, Reference<Constructor<?>>>>();
+
+    public boolean canImposterise(Class<?> type) {
+        return type.isInterface();
+    }
+
+    public <T> T imposterise(Invokable mockObject, Class<T> mockedType, Class<?>... ancilliaryTypes) {
+        if (!mockedType.isInterface()) {
+            throw new IllegalArgumentException("can only imposterise interfaces, but " + mockedType + " is not an interface");
+        }
+
+        final Constructor<?> imposterConstructor = imposterConstructorFor(mockedType, ancilliaryTypes);
+        try {
+            return mockedType.cast(imposterConstructor.newInstance(mockObject));
+        }
+        catch (InvocationTargetException e) {
+            throw new IllegalStateException("could not instantiate imposter of " + mockedType, e.getTargetException());
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("could not instantiate imposter of " + mockedType, e);
+        }
+    }
+
+    /**
+     * Called by the static initialiser of each generated class to get the
+     * methods it implements.  Not intended to be called by anything else.
+     */
+    public static Method[] methodsOfImposterClass(String className) {
+        synchronized (methodsOfClassesBeingInitialised) {
+            return methodsOfClassesBeingInitialised.remove(className);
+        }
+    }
+
+    /*
+     * The constructor is held weakly, like the class itself, but does not
+     * disappear while the class is in use because the class holds it in a
+     * static constant.
+     */
+    private synchronized Constructor<?> imposterConstructorFor(Class<?> mockedType, Class<?>[] ancilliaryTypes) {
+        Map<List<Class<?>>, Reference<Constructor<?>>> constructorsByAncilliaryTypes = imposterConstructors.get(mockedType);
+        if (constructorsByAncilliaryTypes == null) {
+            constructorsByAncilliaryTypes = new HashMap<List<Class<?>>, Reference<Constructor<?>>>();
+            imposterConstructors.put(mockedType, constructorsByAncilliaryTypes);
+        }
+
+        final List<Class<?>> key = Arrays.<Class<?>>asList(ancilliaryTypes);
+        final Reference<Constructor<?>> existing = constructorsByAncilliaryTypes.get(key);
+        Constructor<?> imposterConstructor = existing == null ? null : existing.get();
+        if (imposterConstructor == null) {
+            imposterConstructor = constructorOf(generateImposterClass(mockedType, ancilliaryTypes), mockedType);
+            constructorsByAncilliaryTypes.put(key, new WeakReference<Constructor<?>>(imposterConstructor));
+        }
+        return imposterConstructor;
+    }
+
+    private static Constructor<?> constructorOf(Class<?> imposterClass, Class<?> mockedType) {
+        try {
+            return (Constructor<?>)imposterClass.getField(CONSTRUCTOR_FIELD).get(null);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("could not find constructor of imposter of " + mockedType, e);
+        }
+    }
+
+    private Class<?> generateImposterClass(Class<?> mockedType, Class<?>[] ancilliaryTypes) {
+        final Class<?>[] imposterisedTypes = prepend(mockedType, ancilliaryTypes);
+        for (Class<?> ancilliaryType : ancilliaryTypes) {
+            if (!ancilliaryType.isInterface()) {
+                throw new IllegalArgumentException("ancilliary types must be interfaces, but " + ancilliaryType + " is not");
+            }
+        }
+
+        final boolean definedAlongsideMockedType = !Modifier.isPublic(mockedType.getModifiers());
+        final String className = imposterClassName(mockedType, definedAlongsideMockedType);
+        final Method[] methods = methodsToImplement(imposterisedTypes);
+        final byte[] classBytes = generateClassBytes(className, imposterisedTypes, methods);
+
+        synchronized (methodsOfClassesBeingInitialised) {
+            methodsOfClassesBeingInitialised.put(className, methods);
+        }
+        try {
+            Class<?> imposterClass = definedAlongsideMockedType
+                ? defineAlongside(mockedType, ancilliaryTypes, className, classBytes)
+                : new ImposterClassLoader(imposterisedTypes).define(className, classBytes);
+
+            return Class.forName(className, true, imposterClass.getClassLoader());
+        }
+        catch (Exception e) {
+            throw new IllegalArgumentException("could not imposterise " + mockedType, e);
+        }
+        catch (LinkageError e) {
+            throw new IllegalArgumentException("could not imposterise " + mockedType, e);
+        }
+        finally {
+            synchronized (methodsOfClassesBeingInitialised) {
+                methodsOfClassesBeingInitialised.remove(className);
+            }
+        }
+    }
+
+    private Class<?> defineAlongside(Class<?> mockedType, Class<?>[] ancilliaryTypes, String className, byte[] classBytes) throws Exception {
+        // A non-public interface can only be implemented by a class in the same package
+        // and class loader, and that class loader must also be able to see jMock.
+        if (findCommonClassLoader(mockedType, ancilliaryTypes) != mockedType.getClassLoader()) {
+            throw new IllegalArgumentException("cannot imposterise " + mockedType + " together with " + Arrays.toString(ancilliaryTypes));
+        }
+        return ReflectUtils.defineClass(className, classBytes, mockedType.getClassLoader());
+    }
+
+    private static synchronized String imposterClassName(Class<?> mockedType, boolean definedAlongsideMockedType) {
+        classCount++;
+        final String prefix = definedAlongsideMockedType ? "" : "org.jmock.codegen.";
+        return prefix + mockedType.getName() + "$$ImposterByJMock$$" + classCount;
+    }
+
+    private static Method[] methodsToImplement(Class<?>[] imposterisedTypes) {
+        final Map<String, Method> methodsByDescriptor = new LinkedHashMap<String, Method>();
+
+        try {
+            addMethod(methodsByDescriptor, Object.class.getMethod("equals", Object.class));
+            addMethod(methodsByDescriptor, Object.class.getMethod("hashCode"));
+            addMethod(methodsByDescriptor, Object.class.getMethod("toString"));
+        }
+        catch (NoSuchMethodException e) {
+            throw new Error("no public Object method found", e);
+        }
+
+        for (Class<?> type : imposterisedTypes) {
+            for (Method method : type.getMethods()) {
+                if (!Modifier.isStatic(method.getModifiers())) {
+                    addMethod(methodsByDescriptor, method);
+                }
+            }
+        }
+
+        return methodsByDescriptor.values().toArray(new Method[0]);
+    }
+
+    private static void addMethod(Map<String, Method> methodsByDescriptor, Method method) {
+        final String key = method.getName() + Type.getMethodDescriptor(method);
+        if (!methodsByDescriptor.containsKey(key)) {
+            methodsByDescriptor.put(key, method);
+        }
+    }
+
+    private static byte[] generateClassBytes(String className, Class<?>[] imposterisedTypes, Method[] methods) {
+        final String internalName = className.replace('.', '/');
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+        writer.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, internalName, null, OBJECT, internalNamesOf(imposterisedTypes));
+
+        writer.visitField(ACC_PRIVATE | ACC_FINAL, INVOKABLE_FIELD, "L" + INVOKABLE + ";", null, null).visitEnd();
+        writer.visitField(ACC_PUBLIC | ACC_STATIC | ACC_FINAL, CONSTRUCTOR_FIELD, Type.getDescriptor(Constructor.class), null, null).visitEnd();
+        for (int i = 0; i < methods.length; i++) {
+            writer.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, METHOD_FIELD_PREFIX + i, Type.getDescriptor(Method.class), null, null).visitEnd();
+            if (hasUnboxedParameters(methods[i])) {
+                writer.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, PARAMETER_TYPES_FIELD_PREFIX + i, Type.getDescriptor(Class[].class), null, null).visitEnd();
+            }
+        }
+
+        generateStaticInitialiser(writer, className, internalName, methods);
+        generateConstructor(writer, internalName);
+        for (int i = 0; i < methods.length; i++) {
+            generateMethod(writer, internalName, methods[i], i);
+        }
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void generateStaticInitialiser(ClassWriter writer, String className, String internalName, Method[] methods) {
+        final String methodArrayDescriptor = Type.getDescriptor(Method[].class);
+        final MethodVisitor mv = writer.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn(className);
+        mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(BytecodeImposteriser.class),
+                           "methodsOfImposterClass", "(Ljava/lang/String;)" + methodArrayDescriptor);
+        mv.visitVarInsn(ASTORE, 0);
+        for (int i = 0; i < methods.length; i++) {
+            mv.visitVarInsn(ALOAD, 0);
+            pushInt(mv, i);
+            mv.visitInsn(AALOAD);
+            mv.visitFieldInsn(PUTSTATIC, internalName, METHOD_FIELD_PREFIX + i, Type.getDescriptor(Method.class));
+            if (hasUnboxedParameters(methods[i])) {
+                mv.visitVarInsn(ALOAD, 0);
+                pushInt(mv, i);
+                mv.visitInsn(AALOAD);
+                mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Method.class), "getParameterTypes", "()" + Type.getDescriptor(Class[].class));
+                mv.visitFieldInsn(PUTSTATIC, internalName, PARAMETER_TYPES_FIELD_PREFIX + i, Type.getDescriptor(Class[].class));
+            }
+        }
+
+        mv.visitLdcInsn(Type.getObjectType(internalName));
+        pushInt(mv, 1);
+        mv.visitTypeInsn(ANEWARRAY, Type.getInternalName(Class.class));
+        mv.visitInsn(DUP);
+        pushInt(mv, 0);
+        mv.visitLdcInsn(Type.getType(Invokable.class));
+        mv.visitInsn(AASTORE);
+        mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Class.class), "getConstructor",
+                           "(" + Type.getDescriptor(Class[].class) + ")" + Type.getDescriptor(Constructor.class));
+        mv.visitFieldInsn(PUTSTATIC, internalName, CONSTRUCTOR_FIELD, Type.getDescriptor(Constructor.class));
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void generateConstructor(ClassWriter writer, String internalName) {
+        final MethodVisitor mv = writer.visitMethod(ACC_PUBLIC, "<init>", "(L" + INVOKABLE + ";)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V");
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitFieldInsn(PUTFIELD, internalName, INVOKABLE_FIELD, "L" + INVOKABLE + ";");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void generateMethod(ClassWriter writer, String internalName, Method method, int index) {
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        final MethodVisitor mv = writer.visitMethod(ACC_PUBLIC | ACC_FINAL, method.getName(), Type.getMethodDescriptor(method),
+                                                    null, internalNamesOf(method.getExceptionTypes()));
+        mv.visitCode();
+
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, internalName, INVOKABLE_FIELD, "L" + INVOKABLE + ";");
+
+        mv.visitTypeInsn(NEW, INVOCATION);
+        mv.visitInsn(DUP);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETSTATIC, internalName, METHOD_FIELD_PREFIX + index, Type.getDescriptor(Method.class));
+        if (hasUnboxedParameters(method)) {
+            mv.visitFieldInsn(GETSTATIC, internalName, PARAMETER_TYPES_FIELD_PREFIX + index, Type.getDescriptor(Class[].class));
+            pushBoxedParameters(mv, parameterTypes, true);
+            pushUnboxedParameters(mv, parameterTypes);
+            mv.visitMethodInsn(INVOKESPECIAL, INVOCATION, "<init>",
+                               "(Ljava/lang/Object;" + Type.getDescriptor(Method.class) + Type.getDescriptor(Class[].class)
+                               + "[Ljava/lang/Object;[J)V");
+        }
+        else {
+            pushBoxedParameters(mv, parameterTypes, false);
+            mv.visitMethodInsn(INVOKESPECIAL, INVOCATION, "<init>",
+                               "(Ljava/lang/Object;" + Type.getDescriptor(Method.class) + "[Ljava/lang/Object;)V");
+        }
+
+        mv.visitMethodInsn(INVOKEINTERFACE, INVOKABLE, "invoke", "(L" + INVOCATION + ";)Ljava/lang/Object;");
+
+        returnResult(mv, method.getReturnType());
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static boolean hasUnboxedParameters(Method method) {
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            if (Invocation.canPassUnboxed(parameterType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Pushes an array of the parameters that are boxed, or null if there are none.
+     */
+    private static void pushBoxedParameters(MethodVisitor mv, Class<?>[] parameterTypes, boolean unboxing) {
+        boolean noneBoxed = true;
+        for (Class<?> parameterType : parameterTypes) {
+            noneBoxed &= unboxing && Invocation.canPassUnboxed(parameterType);
+        }
+        if (noneBoxed) {
+            mv.visitInsn(ACONST_NULL);
+            return;
+        }
+
+        pushInt(mv, parameterTypes.length);
+        mv.visitTypeInsn(ANEWARRAY, OBJECT);
+        int slot = 1;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            final Type type = Type.getType(parameterTypes[i]);
+            if (!(unboxing && Invocation.canPassUnboxed(parameterTypes[i]))) {
+                mv.visitInsn(DUP);
+                pushInt(mv, i);
+                mv.visitVarInsn(type.getOpcode(ILOAD), slot);
+                box(mv, parameterTypes[i]);
+                mv.visitInsn(AASTORE);
+            }
+            slot += type.getSize();
+        }
+    }
+
+    private static void pushUnboxedParameters(MethodVisitor mv, Class<?>[] parameterTypes) {
+        pushInt(mv, parameterTypes.length);
+        mv.visitIntInsn(NEWARRAY, T_LONG);
+        int slot = 1;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            final Type type = Type.getType(parameterTypes[i]);
+            if (Invocation.canPassUnboxed(parameterTypes[i])) {
+                mv.visitInsn(DUP);
+                pushInt(mv, i);
+                mv.visitVarInsn(type.getOpcode(ILOAD), slot);
+                if (parameterTypes[i] == int.class) {
+                    mv.visitInsn(I2L);
+                }
+                else if (parameterTypes[i] == double.class) {
+                    mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Double.class), "doubleToRawLongBits", "(D)J");
+                }
+                mv.visitInsn(LASTORE);
+            }
+            slot += type.getSize();
+        }
+    }
+
+    private static void returnResult(MethodVisitor mv, Class<?> returnType) {
+        if (returnType == void.class) {
+            mv.visitInsn(POP);
+            mv.visitInsn(RETURN);
+        }
+        else if (returnType.isPrimitive()) {
+            final String boxType = Type.getInternalName(boxTypeOf(returnType));
+            mv.visitTypeInsn(CHECKCAST, boxType);
+            mv.visitMethodInsn(INVOKEVIRTUAL, boxType, returnType.getName() + "Value",
+                               "()" + Type.getDescriptor(returnType));
+            mv.visitInsn(Type.getType(returnType).getOpcode(IRETURN));
+        }
+        else {
+            if (returnType != Object.class) {
+                mv.visitTypeInsn(CHECKCAST, Type.getInternalName(returnType));
+            }
+            mv.visitInsn(ARETURN);
+        }
+    }
+
+    private static void box(MethodVisitor mv, Class<?> type) {
+        if (type.isPrimitive()) {
+            final Class<?> boxType = boxTypeOf(type);
+            mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(boxType), "valueOf",
+                               "(" + Type.getDescriptor(type) + ")" + Type.getDescriptor(boxType));
+        }
+    }
+
+    private static Class<?> boxTypeOf(Class<?> primitiveType) {
+        if (primitiveType == boolean.class) return Boolean.class;
+        if (primitiveType == byte.class) return Byte.class;
+        if (primitiveType == char.class) return Character.class;
+        if (primitiveType == short.class) return Short.class;
+        if (primitiveType == int.class) return Integer.class;
+        if (primitiveType == long.class) return Long.class;
+        if (primitiveType == float.class) return Float.class;
+        if (primitiveType == double.class) return Double.class;
+        throw new IllegalArgumentException(primitiveType + " is not a primitive type");
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        mv.visitLdcInsn(Integer.valueOf(value));
+    }
+
+    private static String[] internalNamesOf(Class<?>[] types) {
+        final List<String> names = new ArrayList<String>();
+        for (Class<?> type : types) {
+            names.add(Type.getInternalName(type));
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    private static class ImposterClassLoader extends ClassLoader {
+        public ImposterClassLoader(Class<?>[] imposterisedTypes) {
+            super(new CombineClassLoader(withJMockTypes(imposterisedTypes)));
+        }
+
+        public Class<?> define(String className, byte[] classBytes) {
+            return defineClass(className, classBytes, 0, classBytes.length);
+        }
+
+        private static Class<?>[] withJMockTypes(Class<?>[] imposterisedTypes) {
+            final List<Class<?>> types = new ArrayList<Class<?>>(Arrays.asList(imposterisedTypes));
+            types.add(Invokable.class);
+            types.add(Invocation.class);
+            types.add(BytecodeImposteriser.class);
+            return types.toArray(new Class<?>[types.size()]);
+        }
+    }
+}
@@ -5,11 +5,11 @@ import org.jmock.api.Action;
 import org.jmock.api.Invocation;
 
 public class RememberParametersAction implements Action {
-    private Object[] parameters;
+    private Invocation invocation;
 
     @Override
     public Object invoke(Invocation invocation) throws Throwable {
-        parameters = invocation.getParametersAsArray();
+        this.invocation = invocation;
         return null;
     }
 
@@ -19,9 +19,9 @@ public class RememberParametersAction implements Action {
     }
 
     public <T> T get(int parameterNum){
-        if (parameterNum>=parameters.length){
-            throw new AssertionError("There is no enough parameters. You want to take "+parameterNum+" but there is only "+parameters.length+" parameters");
+        if (parameterNum>=invocation.getParameterCount()){
+            throw new AssertionError("There is no enough parameters. You want to take "+parameterNum+" but there is only "+invocation.getParameterCount()+" parameters");
         }
-        return (T) parameters[parameterNum];
+        return (T) invocation.getParameter(parameterNum);
     }
 }
@@ -0,0 +1,128 @@
+package org.jmock.lib.concurrent;
+
+import static org.hamcrest.StringDescription.asString;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jmock.api.Invocation;
+import org.jmock.api.Invokable;
+import org.jmock.api.ThreadingPolicy;
+import org.jmock.internal.StatePredicate;
+import org.jmock.lib.concurrent.internal.FixedTimeout;
+import org.jmock.lib.concurrent.internal.InfiniteTimeout;
+import org.jmock.lib.concurrent.internal.PredicateWaiters;
+import org.jmock.lib.concurrent.internal.Timeout;
+
+
+/**
+ * A ThreadingPolicy that makes the Mockery thread-safe without serialising
+ * all invocations of all mock objects.
+ * 
+ * Invocations of the same mock object are serialised, but different mock objects
+ * can be invoked in parallel.  The identity methods of mock objects (equals,
+ * hashCode and toString) do not take a lock at all.  A Mockery that uses this policy does not take its
+ * own lock while it dispatches invocations, and expectations count their
+ * invocations atomically, so a cardinality is never exceeded even when an
+ * expectation is matched by invocations of several mock objects at once.
+ * Expectations with ordering constraints or side effects, such as those in a
+ * sequence or constrained by a state machine, are matched, counted and have their
+ * side effects performed under a single lock, so that the states of sequences and
+ * state machines change atomically even when different mock objects are invoked
+ * in parallel.
+ * 
+ * Actions and custom matchers that are shared between mock objects may be run
+ * by several threads at the same time, and an action that invokes another mock
+ * object can deadlock with an action of that mock object that does the reverse.
+ * Use a {@link Synchroniser} if the test relies on either.
+ */
+public class StripedSynchroniser implements ThreadingPolicy {
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final PredicateWaiters waiters = new PredicateWaiters(waitLock);
+    private final AtomicReference<Error> firstError = new AtomicReference<Error>();
+    
+    
+    /** 
+     * Waits for a StatePredicate to become active.  
+     * 
+     * Warning: this will wait forever unless the test itself has a timeout.
+     *   
+     * @param p the StatePredicate to wait for
+     * @throws InterruptedException
+     */
+    public void waitUntil(StatePredicate p) throws InterruptedException {
+        waitUntil(p, new InfiniteTimeout());
+    }
+    
+    /** 
+     * Waits up to a timeout for a StatePredicate to become active.  Fails the
+     * test if the timeout expires.
+     *   
+     * @param p the StatePredicate to wait for
+     * @param timeoutMs the timeout in milliseconds
+     * @throws InterruptedException
+     */
+    public void waitUntil(StatePredicate p, long timeoutMs) throws InterruptedException {
+        waitUntil(p, new FixedTimeout(timeoutMs));
+    }
+    
+    private void waitUntil(StatePredicate p, Timeout timeout) throws InterruptedException {
+        waitLock.lock();
+        try {
+            waiters.waitUntil(p, timeout);
+        }
+        catch (TimeoutException e) {
+            if (firstError.get() != null) {
+                throw firstError.get();
+            }
+            else {
+                throw new AssertionError("timed out waiting for " + asString(p));
+            }
+        }
+        finally {
+            waitLock.unlock();
+        }
+    }
+    
+    public Invokable synchroniseAccessTo(final Invokable mockObject) {
+        final Object stripe = new Object();
+        return new Invokable() {
+            public Object invoke(Invocation invocation) throws Throwable {
+                return synchroniseInvocation(stripe, mockObject, invocation);
+            }
+            
+            @Override
+            public String toString() {
+                return mockObject.toString();
+            }
+        };
+    }
+
+    private Object synchroniseInvocation(Object stripe, Invokable mockObject, Invocation invocation) throws Throwable {
+        try {
+            synchronized (stripe) {
+                return mockObject.invoke(invocation);
+            }
+        }
+        catch (Error e) {
+            firstError.compareAndSet(null, e);
+            throw e;
+        }
+        finally {
+            wakeWaitingThreads();
+        }
+    }
+    
+    private void wakeWaitingThreads() {
+        if (waiters.hasWaitingThreads()) {
+            waitLock.lock();
+            try {
+                waiters.signalActivated();
+            }
+            finally {
+                waitLock.unlock();
+            }
+        }
+    }
+}
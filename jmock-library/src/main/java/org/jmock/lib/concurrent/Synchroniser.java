@@ -3,6 +3,7 @@ package org.jmock.lib.concurrent;
 import static org.hamcrest.StringDescription.asString;
 
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.jmock.api.Invocation;
 import org.jmock.api.Invokable;
@@ -10,6 +11,7 @@ import org.jmock.api.ThreadingPolicy;
 import org.jmock.internal.StatePredicate;
 import org.jmock.lib.concurrent.internal.FixedTimeout;
 import org.jmock.lib.concurrent.internal.InfiniteTimeout;
+import org.jmock.lib.concurrent.internal.PredicateWaiters;
 import org.jmock.lib.concurrent.internal.Timeout;
 
 
@@ -20,7 +22,8 @@ import org.jmock.lib.concurrent.internal.Timeout;
  * @author Nat Pryce
  */
 public class Synchroniser implements ThreadingPolicy {
-    private final Object sync = new Object();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PredicateWaiters waiters = new PredicateWaiters(lock);
     private Error firstError = null;
     
     
@@ -49,22 +52,21 @@ public class Synchroniser implements ThreadingPolicy {
     }
     
     private void waitUntil(StatePredicate p, Timeout timeout) throws InterruptedException {
-        synchronized(sync) {
-            while (!p.isActive()) {
-                try {
-                    sync.wait(timeout.timeRemaining());
-                }
-                catch (TimeoutException e) {
-                    if (firstError != null) {
-                        throw firstError;
-                    }
-                    else {
-                        throw new AssertionError("timed out waiting for " + asString(p));
-                    }
-                }
+        lock.lock();
+        try {
+            waiters.waitUntil(p, timeout);
+        }
+        catch (TimeoutException e) {
+            if (firstError != null) {
+                throw firstError;
+            }
+            else {
+                throw new AssertionError("timed out waiting for " + asString(p));
             }
         }
-        
+        finally {
+            lock.unlock();
+        }
     }
     
     public Invokable synchroniseAccessTo(final Invokable mockObject) {
@@ -76,18 +78,22 @@ public class Synchroniser implements ThreadingPolicy {
     }
 
     private Object synchroniseInvocation(Invokable mockObject, Invocation invocation) throws Throwable {
-        synchronized (sync) {
-            try {
-                return mockObject.invoke(invocation);
+        lock.lock();
+        try {
+            return mockObject.invoke(invocation);
+        }
+        catch (Error e) {
+            if (firstError == null) {
+                firstError = e;
             }
-            catch (Error e) {
-                if (firstError == null) {
-                    firstError = e;
-                }
-                throw e;
+            throw e;
+        }
+        finally {
+            try {
+                waiters.signalActivated();
             }
             finally {
-                sync.notifyAll();
+                lock.unlock();
             }
         }
     }
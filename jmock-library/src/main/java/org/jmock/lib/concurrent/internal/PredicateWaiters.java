@@ -0,0 +1,77 @@
+package org.jmock.lib.concurrent.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+import org.jmock.internal.StatePredicate;
+
+/**
+ * Threads waiting for StatePredicates to become active.
+ * 
+ * Each waiting thread waits on its own condition, which is signalled only
+ * when its predicate has become active.  Threads that change state therefore
+ * wake up only the waiting threads that the change lets continue, rather than
+ * every waiting thread.  All methods except {@link #hasWaitingThreads()} must be
+ * called while holding the lock passed to the constructor.
+ */
+public class PredicateWaiters {
+    private final Lock lock;
+    private final List<Waiter> waiters = new ArrayList<Waiter>();
+    private volatile int waiterCount = 0;
+    
+    public PredicateWaiters(Lock lock) {
+        this.lock = lock;
+    }
+    
+    /**
+     * Can be called without holding the lock.  A thread that has changed some
+     * state and then finds no waiting threads does not have to signal, because
+     * any thread that starts waiting later will see the new state.
+     */
+    public boolean hasWaitingThreads() {
+        return waiterCount > 0;
+    }
+    
+    public void waitUntil(StatePredicate predicate, Timeout timeout) throws InterruptedException, TimeoutException {
+        final Waiter waiter = new Waiter(predicate, lock.newCondition());
+        waiters.add(waiter);
+        waiterCount = waiters.size();
+        try {
+            while (!predicate.isActive()) {
+                final long timeRemaining = timeout.timeRemaining();
+                if (timeRemaining == 0L) {
+                    waiter.activated.await();
+                }
+                else {
+                    waiter.activated.await(timeRemaining, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        finally {
+            waiters.remove(waiter);
+            waiterCount = waiters.size();
+        }
+    }
+    
+    public void signalActivated() {
+        for (Waiter waiter : waiters) {
+            if (waiter.predicate.isActive()) {
+                waiter.activated.signal();
+            }
+        }
+    }
+    
+    private static class Waiter {
+        public final StatePredicate predicate;
+        public final Condition activated;
+        
+        public Waiter(StatePredicate predicate, Condition activated) {
+            this.predicate = predicate;
+            this.activated = activated;
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package org.jmock.lib.legacy;
 
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import net.sf.cglib.core.CodeGenerationException;
 import net.sf.cglib.core.DefaultNamingPolicy;
@@ -26,10 +31,17 @@ import org.jmock.internal.SearchingClassLoader;
 import org.jmock.lib.AbstractImposteriser;
 import org.objenesis.Objenesis;
 import org.objenesis.ObjenesisStd;
+import org.objenesis.instantiator.ObjectInstantiator;
 
 /**
  * This class lets you imposterise abstract and concrete classes 
  * <em>without</em> calling the constructors of the mocked class.
+ * 
+ * The proxy class generated for a mocked type and set of ancilliary types
+ * is remembered, together with the instantiator that creates its instances,
+ * so that only the first imposter of those types pays for code generation.
+ * The cache is weakly keyed by the mocked type and holds its entries softly,
+ * so it does not stop mocked types or their class loaders from being unloaded.
  *   
  * @author npryce
  */
@@ -53,6 +65,9 @@ public class ClassImposteriser  extends AbstractImposteriser {
     
     private final Objenesis objenesis = new ObjenesisStd(false);
     
+    private final Map<Class<?>, Map<List<Class<?>>, Reference<ProxyType>>> proxyTypes =
+        new WeakHashMap<Class<?>, Map<List<Class<?>>, Reference<ProxyType>>>();
+    
     public boolean canImposterise(Class<?> type) {
         return !type.isPrimitive() && 
                !Modifier.isFinal(type.getModifiers()) && 
@@ -64,15 +79,32 @@ public class ClassImposteriser  extends AbstractImposteriser {
             throw new IllegalArgumentException(mockedType.getName() + " has a final toString method");
         }
         
-        try {
-            setConstructorsAccessible(mockedType, true);
-            Class<?> proxyClass = createProxyClass(mockedType, ancilliaryTypes);
-            return mockedType.cast(createProxy(proxyClass, mockObject));
+        return mockedType.cast(proxyTypeFor(mockedType, ancilliaryTypes).newProxy(mockObject));
+	}
+    
+    private synchronized ProxyType proxyTypeFor(Class<?> mockedType, Class<?>[] ancilliaryTypes) {
+        Map<List<Class<?>>, Reference<ProxyType>> proxyTypesByAncilliaryTypes = proxyTypes.get(mockedType);
+        if (proxyTypesByAncilliaryTypes == null) {
+            proxyTypesByAncilliaryTypes = new HashMap<List<Class<?>>, Reference<ProxyType>>();
+            proxyTypes.put(mockedType, proxyTypesByAncilliaryTypes);
         }
-        finally {
-            setConstructorsAccessible(mockedType, false);
+        
+        final List<Class<?>> key = Arrays.<Class<?>>asList(ancilliaryTypes.clone());
+        final Reference<ProxyType> existing = proxyTypesByAncilliaryTypes.get(key);
+        ProxyType proxyType = existing == null ? null : existing.get();
+        if (proxyType == null) {
+            try {
+                setConstructorsAccessible(mockedType, true);
+                Class<?> proxyClass = createProxyClass(mockedType, ancilliaryTypes);
+                proxyType = new ProxyType(objenesis.getInstantiatorOf(proxyClass));
+            }
+            finally {
+                setConstructorsAccessible(mockedType, false);
+            }
+            proxyTypesByAncilliaryTypes.put(key, new SoftReference<ProxyType>(proxyType));
         }
-	}
+        return proxyType;
+    }
     
     private boolean toStringMethodIsFinal(Class<?> type) {
         try {
@@ -135,17 +167,25 @@ public class ClassImposteriser  extends AbstractImposteriser {
         }
     }
     
-    private Object createProxy(Class<?> proxyClass, final Invokable mockObject) {
-        Factory proxy = (Factory)objenesis.newInstance(proxyClass);
-        proxy.setCallbacks(new Callback[] {
-            new InvocationHandler() {
-                public Object invoke(Object receiver, Method method, Object[] args) throws Throwable {
-                    return mockObject.invoke(new Invocation(receiver, method, args));
-                }
-            },
-            NoOp.INSTANCE
-        });
-        return proxy;
+    private static class ProxyType {
+        private final ObjectInstantiator instantiator;
+        
+        public ProxyType(ObjectInstantiator instantiator) {
+            this.instantiator = instantiator;
+        }
+        
+        public Object newProxy(final Invokable mockObject) {
+            Factory proxy = (Factory)instantiator.newInstance();
+            proxy.setCallbacks(new Callback[] {
+                new InvocationHandler() {
+                    public Object invoke(Object receiver, Method method, Object[] args) throws Throwable {
+                        return mockObject.invoke(new Invocation(receiver, method, args));
+                    }
+                },
+                NoOp.INSTANCE
+            });
+            return proxy;
+        }
     }
     
     public static class ClassWithSuperclassToWorkAroundCglibBug {}
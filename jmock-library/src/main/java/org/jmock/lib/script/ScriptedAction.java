@@ -1,12 +1,19 @@
 package org.jmock.lib.script;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.hamcrest.Description;
 import org.jmock.api.Action;
 import org.jmock.api.Invocation;
 
+import bsh.BshMethod;
 import bsh.EvalError;
 import bsh.Interpreter;
+import bsh.NameSpace;
+import bsh.Primitive;
 import bsh.TargetError;
+import bsh.UtilEvalError;
 
 /** 
  * <p>An {@link Action} that executes a <a href="http://www.beanshell.org">BeanShell</a> script.
@@ -33,13 +40,20 @@ import bsh.TargetError;
  *     will(perform("$0.visitSheep(s)").where("s", sheep);
  * </pre>
  * 
+ * <p>The script is parsed once, the first time it is performed, and each time it is 
+ * performed it has its own $this and parameters, so an action can be performed by
+ * several threads at once.  Variables that the script declares are local to one 
+ * performance of the script.</p>
  * 
  * @author nat
  *
  */
 public class ScriptedAction implements Action {
+    private static final String SCRIPT_METHOD_NAME = "$script";
+    
     private final Interpreter interpreter = new Interpreter();
     private final String script;
+    private final ConcurrentMap<Integer, BshMethod> compiledScripts = new ConcurrentHashMap<Integer, BshMethod>();
 
     public ScriptedAction(String expression) {
         this.script = expression;
@@ -48,8 +62,8 @@ public class ScriptedAction implements Action {
 
     public Object invoke(Invocation invocation) throws Throwable {
         try {
-            defineParameters(interpreter, invocation);
-            return interpreter.eval(script);
+            return Primitive.unwrap(
+                compiledScriptFor(invocation.getParameterCount()).invoke(argumentsOf(invocation), interpreter));
         }
         catch (TargetError e) {
             throw e.getTarget();
@@ -59,13 +73,54 @@ public class ScriptedAction implements Action {
         }
     }
     
-    private void defineParameters(Interpreter interpreter, Invocation invocation) 
-        throws EvalError 
-    {
-        interpreter.set("$this", invocation.getInvokedObject());
+    private Object[] argumentsOf(Invocation invocation) {
+        Object[] arguments = new Object[invocation.getParameterCount() + 1];
+        arguments[0] = invocation.getInvokedObject();
         for (int i = 0; i < invocation.getParameterCount(); i++) {
-            interpreter.set("$" + i, invocation.getParameter(i));
+            arguments[i+1] = invocation.getParameter(i);
+        }
+        return arguments;
+    }
+    
+    private BshMethod compiledScriptFor(int parameterCount) throws EvalError {
+        BshMethod compiledScript = compiledScripts.get(parameterCount);
+        return (compiledScript == null) ? compile(parameterCount) : compiledScript;
+    }
+    
+    /*
+     * The script becomes the body of a loosely typed method, so that it returns the
+     * value of its last statement, as it would if it were evaluated directly.  Strict 
+     * Java does not allow loosely typed methods, so the method is declared by a
+     * lenient interpreter.  The body is run by the strict interpreter when invoked. 
+     */
+    private synchronized BshMethod compile(int parameterCount) throws EvalError {
+        BshMethod compiledScript = compiledScripts.get(parameterCount);
+        if (compiledScript != null) {
+            return compiledScript;
+        }
+        
+        Class<?>[] signature = new Class<?>[parameterCount + 1];
+        StringBuilder declaration = new StringBuilder();
+        
+        declaration.append(SCRIPT_METHOD_NAME).append("(Object $this");
+        signature[0] = Object.class;
+        for (int i = 0; i < parameterCount; i++) {
+            declaration.append(", Object $").append(i);
+            signature[i+1] = Object.class;
+        }
+        declaration.append(") {\n").append(script).append("\n;\n}");
+        
+        NameSpace namespace = interpreter.getNameSpace();
+        new Interpreter().eval(declaration.toString(), namespace);
+        try {
+            compiledScript = namespace.getMethod(SCRIPT_METHOD_NAME, signature);
+        }
+        catch (UtilEvalError e) {
+            throw new IllegalArgumentException("could not interpret script", e);
         }
+        
+        compiledScripts.put(parameterCount, compiledScript);
+        return compiledScript;
     }
 
     public void describeTo(Description description) {
@@ -3,8 +3,10 @@ package org.jmock;
 import org.hamcrest.Matcher;
 import org.junit.Test;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
 
 
 @SuppressWarnings({"RedundantStringConstructorCall", "unchecked"})
@@ -69,4 +71,53 @@ public class ExpectationsExtTest {
         assertThat(null, matches);
         assertThat(42, matches);
     }
+
+    public interface Target {
+        void call(String s, int i, long l, Runnable r, CharSequence c);
+    }
+
+    @Test
+    public void testRunsExpectationsWithTypedMatchersOnce() throws Exception {
+        final Mockery mockery = new Mockery();
+        final Target target = mockery.mock(Target.class);
+        final int[] runs = {0};
+
+        mockery.checking(new ExpectationsExt() {
+            @Override
+            protected void expect() throws Exception {
+                runs[0]++;
+                oneOf(target).call(with(any(String.class)), with.intIs(anything()), with(equal(5L)),
+                        with(aNonNull(Runnable.class)), with(String.class, containsString("x")));
+            }
+        });
+
+        assertEquals("runs of expect()", 1, runs[0]);
+
+        target.call("s", 1, 5L, new Runnable() {
+            public void run() {
+            }
+        }, "xyz");
+        mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testFindsOutTypesOfUntypedMatchersByRunningExpectationsAgain() throws Exception {
+        final Mockery mockery = new Mockery();
+        final Target target = mockery.mock(Target.class);
+        final int[] runs = {0};
+
+        mockery.checking(new ExpectationsExt() {
+            @Override
+            protected void expect() throws Exception {
+                runs[0]++;
+                oneOf(target).call(with(any(String.class)), with.intIs(anything()), with(equal(5L)),
+                        with.<Runnable>is(org.hamcrest.CoreMatchers.anything()), with.<CharSequence>is(containsString("x")));
+            }
+        });
+
+        assertEquals("runs of expect()", 3, runs[0]);
+
+        target.call("s", 1, 5L, null, "xyz");
+        mockery.assertIsSatisfied();
+    }
 }
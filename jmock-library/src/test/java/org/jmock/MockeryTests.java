@@ -1,8 +1,18 @@
 package org.jmock;
 
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.api.Invokable;
+import org.jmock.api.ThreadingPolicy;
+import org.jmock.internal.CaptureControl;
+import org.jmock.internal.ExpectationCapture;
+import org.jmock.lib.concurrent.Synchroniser;
 import org.jmock.support.DummyInterface;
 
 public class MockeryTests extends TestCase {
@@ -25,4 +35,108 @@ public class MockeryTests extends TestCase {
         assertEquals("secondMock", 
                      mockery.mock(AnotherInterface.class, "secondMock").toString());
     }
+    
+    public void testCapturesEachExpectationWithItsOwnImposter() {
+        Mockery mockery = new Mockery();
+        CaptureControl mock = (CaptureControl)mockery.mock(DummyInterface.class);
+        
+        RecordingCapture firstCapture = new RecordingCapture();
+        RecordingCapture secondCapture = new RecordingCapture();
+        
+        DummyInterface firstImposter = (DummyInterface)mock.captureExpectationTo(firstCapture);
+        DummyInterface secondImposter = (DummyInterface)mock.captureExpectationTo(secondCapture);
+        firstImposter.noArgMethod();
+        secondImposter.oneArgMethod("arg");
+        
+        assertEquals("first capture", 1, firstCapture.invocations.size());
+        assertEquals("first capture method", "noArgMethod", firstCapture.invocations.get(0).getInvokedMethod().getName());
+        assertEquals("second capture", 1, secondCapture.invocations.size());
+        assertEquals("second capture method", "oneArgMethod", secondCapture.invocations.get(0).getInvokedMethod().getName());
+    }
+    
+    public void testFakesTheIdentityOfMockObjects() {
+        Mockery mockery = new Mockery();
+        assertFakesIdentityOf(mockery.mock(DummyInterface.class, "mock"), mockery.mock(AnotherInterface.class));
+    }
+    
+    public void testFakesTheIdentityOfMockObjectsWhenTheThreadingPolicyIsNotKnown() {
+        Mockery mockery = new Mockery();
+        RecordingThreadingPolicy threadingPolicy = new RecordingThreadingPolicy();
+        mockery.setThreadingPolicy(threadingPolicy);
+        
+        final DummyInterface mock = mockery.mock(DummyInterface.class, "mock");
+        assertFakesIdentityOf(mock, mockery.mock(AnotherInterface.class));
+        
+        mockery.checking(new ExpectationsExt() {protected void expect() throws Exception {
+            ignoring (mock);
+        }});
+        mock.noArgMethod();
+        
+        assertEquals("synchronised mock objects", 2, threadingPolicy.mockObjects.size());
+    }
+    
+    public void testUsesTheSynchronisationOfSubclassesOfKnownThreadingPolicies() {
+        Mockery mockery = new Mockery();
+        final List<Invokable> synchronisedMockObjects = new ArrayList<Invokable>();
+        mockery.setThreadingPolicy(new Synchroniser() {
+            @Override
+            public Invokable synchroniseAccessTo(Invokable mockObject) {
+                synchronisedMockObjects.add(mockObject);
+                return super.synchroniseAccessTo(mockObject);
+            }
+        });
+        
+        final DummyInterface mock = mockery.mock(DummyInterface.class, "mock");
+        assertFakesIdentityOf(mock, mockery.mock(AnotherInterface.class));
+        
+        assertEquals("synchronised mock objects", 2, synchronisedMockObjects.size());
+    }
+    
+    public void testOnlyAllowsTheTestThreadToInvokeMockObjectsByDefault() throws InterruptedException {
+        Mockery mockery = new Mockery();
+        final DummyInterface mock = mockery.mock(DummyInterface.class, "mock");
+        final List<Throwable> thrown = new ArrayList<Throwable>();
+        
+        Thread otherThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    mock.noArgMethod();
+                }
+                catch (Throwable t) {
+                    thrown.add(t);
+                }
+            }
+        };
+        otherThread.start();
+        otherThread.join();
+        
+        assertEquals("thrown", 1, thrown.size());
+        assertTrue("should have thrown ConcurrentModificationException but threw " + thrown.get(0), 
+                   thrown.get(0) instanceof ConcurrentModificationException);
+    }
+    
+    private void assertFakesIdentityOf(Object mock, Object otherMock) {
+        assertEquals("toString", "mock", mock.toString());
+        assertEquals("hashCode", System.identityHashCode(mock), mock.hashCode());
+        assertTrue("should equal itself", mock.equals(mock));
+        assertFalse("should not equal another mock object", mock.equals(otherMock));
+    }
+    
+    private static class RecordingThreadingPolicy implements ThreadingPolicy {
+        public final List<Invokable> mockObjects = new ArrayList<Invokable>();
+        
+        public Invokable synchroniseAccessTo(Invokable mockObject) {
+            mockObjects.add(mockObject);
+            return mockObject;
+        }
+    }
+    
+    private static class RecordingCapture implements ExpectationCapture {
+        public final List<Invocation> invocations = new ArrayList<Invocation>();
+        
+        public void createExpectationFrom(Invocation invocation) {
+            invocations.add(invocation);
+        }
+    }
 }
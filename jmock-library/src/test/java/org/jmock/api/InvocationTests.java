@@ -51,6 +51,34 @@ public class InvocationTests extends TestCase {
                      Arrays.asList(ARG_VALUES), Arrays.asList(invocation.getParametersAsArray()));
     }
 
+    public void testBoxesParametersPassedUnboxedWhenAskedForThemAsObjects() {
+        Invocation invocation = new Invocation(INVOKED, method, ARG_TYPES, 
+                                               new Object[]{null, Boolean.TRUE}, new long[]{0, 0});
+
+        assertEquals("parameter count", ARG_VALUES.length, invocation.getParameterCount());
+        assertEquals("parameter values",
+                     Arrays.asList(ARG_VALUES), Arrays.asList(invocation.getParametersAsArray()));
+        assertEquals("should equal invocation with boxed parameters", 
+                     new Invocation(INVOKED, method, ARG_VALUES), invocation);
+    }
+    
+    public void testReportsParametersPassedUnboxed() {
+        Method unboxedMethod = methodFactory.newMethod(METHOD_NAME, 
+            new Class[]{int.class, long.class, double.class}, void.class, new Class[0]);
+        Invocation invocation = new Invocation(INVOKED, unboxedMethod, unboxedMethod.getParameterTypes(), 
+            null, new long[]{-1, Long.MAX_VALUE, Double.doubleToRawLongBits(0.5)});
+        
+        assertTrue("int should be unboxed", invocation.hasUnboxedParameter(0, int.class));
+        assertFalse("int should not be reported as long", invocation.hasUnboxedParameter(0, long.class));
+        assertEquals(-1L, invocation.getUnboxedParameterValue(0));
+        assertEquals(-1, invocation.getParameter(0));
+        assertEquals(Long.MAX_VALUE, invocation.getParameter(1));
+        assertEquals(0.5, invocation.getParameter(2));
+        
+        Invocation boxed = new Invocation(INVOKED, unboxedMethod, -1, Long.MAX_VALUE, 0.5);
+        assertFalse("boxed parameter should not be reported as unboxed", boxed.hasUnboxedParameter(0, int.class));
+    }
+
     public void testConstructorInterpretsNullParameterValueArrayAsZeroArguments() {
         Invocation invocation = new Invocation(INVOKED, method);
 
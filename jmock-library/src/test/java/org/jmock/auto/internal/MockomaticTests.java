@@ -84,4 +84,35 @@ public class MockomaticTests extends TestCase {
         assertThat("named sequence after field", 
                    example.aSequence.toString(), equalTo("aSequence"));
     }
+    
+    public void testFillsInEachObjectOfAClassWithObjectsFromItsOwnMockery() {
+        ObjectWithPublicAndPrivateFields example1 = new ObjectWithPublicAndPrivateFields();
+        ObjectWithPublicAndPrivateFields example2 = new ObjectWithPublicAndPrivateFields();
+        
+        mockomatic.fillIn(example1);
+        new Mockomatic(new Mockery()).fillIn(example2);
+        
+        assertThat("created mock in second object", 
+                   example2.publicMock, notNullValue());
+        assertNotSame("mock in second object", example1.publicMock, example2.publicMock);
+        assertNotSame("private mock in second object", example1.privateMock(), example2.privateMock());
+    }
+    
+    public static class WantsUnsupportedAutoField {
+        public @Auto String aString;
+    }
+    
+    public void testCannotAutoInstantiateFieldsOfOtherTypes() {
+        try {
+            mockomatic.fillIn(new WantsUnsupportedAutoField());
+            fail("should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException expected) {}
+        
+        try {
+            mockomatic.fillIn(new WantsUnsupportedAutoField());
+            fail("should have thrown IllegalStateException when asked again");
+        }
+        catch (IllegalStateException expected) {}
+    }
 }
@@ -30,6 +30,26 @@ public class AllDeclaredFieldsTests extends TestCase {
                                       aFieldCalled("field3"), aFieldCalled("field4")));
     }
 
+    public void testLooksUpTheFieldsOfEachClassOnlyOnce() {
+        assertSame(AllDeclaredFields.in(WithInheritedFields.class), 
+                   AllDeclaredFields.in(WithInheritedFields.class));
+    }
+    
+    public void testMakesAccessibleCopiesWithoutChangingTheSharedFields() throws Exception {
+        Field shared = null;
+        for (Field field : AllDeclaredFields.in(TwoDeclaredFields.class)) {
+            if (field.getName().equals("field2")) {
+                shared = field;
+            }
+        }
+        
+        Field copy = AllDeclaredFields.accessibleCopyOf(shared);
+        
+        assertNotSame(shared, copy);
+        assertEquals(shared, copy);
+        assertTrue("copy should be accessible", copy.isAccessible());
+        assertFalse("shared field should not be accessible", shared.isAccessible());
+    }
     
     private Matcher<Field> aFieldCalled(String name) {
         return new FeatureMatcher<Field, String>(equalTo(name), "field with name", "field") {
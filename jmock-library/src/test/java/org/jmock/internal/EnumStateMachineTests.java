@@ -0,0 +1,50 @@
+package org.jmock.internal;
+
+import junit.framework.TestCase;
+
+import org.hamcrest.StringDescription;
+
+public class EnumStateMachineTests extends TestCase {
+    enum Colour { RED, AMBER, GREEN }
+    
+    StateMachine stateMachine = new StateMachine("lights", EnumStateMachine.stateNamesOf(Colour.class));
+    EnumStateMachine<Colour> lights = new EnumStateMachine<Colour>(stateMachine, Colour.class);
+    
+    public void testIsInitiallyInNoState() {
+        for (Colour colour : Colour.values()) {
+            assertFalse("should not report being " + colour, lights.is(colour).isActive());
+            assertTrue("should report not being " + colour, lights.isNot(colour).isActive());
+        }
+    }
+    
+    public void testChangesStateOfTheUnderlyingStateMachine() {
+        lights.startsAs(Colour.RED);
+        
+        assertTrue("should report being RED", lights.is(Colour.RED).isActive());
+        assertTrue("underlying state machine should report being RED", stateMachine.is("RED").isActive());
+        
+        lights.become(Colour.GREEN);
+        
+        assertFalse("should not report being RED", lights.is(Colour.RED).isActive());
+        assertTrue("should report being GREEN", lights.is(Colour.GREEN).isActive());
+        assertFalse("should not report not being GREEN", lights.isNot(Colour.GREEN).isActive());
+    }
+    
+    public void testCountsChangesOfState() {
+        int initialVersion = lights.version();
+        
+        lights.startsAs(Colour.RED);
+        lights.become(Colour.RED);
+        lights.become(Colour.AMBER);
+        
+        assertEquals(initialVersion + 2, lights.version());
+    }
+    
+    public void testDescribesItselfAndItsStatesWithTheNamesOfTheConstants() {
+        lights.startsAs(Colour.AMBER);
+        
+        assertEquals("lights is AMBER", StringDescription.toString(lights));
+        assertEquals("lights is GREEN", StringDescription.toString(lights.is(Colour.GREEN)));
+        assertEquals("lights is not GREEN", StringDescription.toString(lights.isNot(Colour.GREEN)));
+    }
+}
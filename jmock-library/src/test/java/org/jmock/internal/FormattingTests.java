@@ -12,4 +12,10 @@ public class FormattingTests extends TestCase {
         assertEquals("2 times", Formatting.times(2));
         assertEquals("99 times", Formatting.times(99));
     }
+    
+    public void testFormatsCountsWithThousandsSeparators() {
+        assertEquals("1", Formatting.count(1));
+        assertEquals("999", Formatting.count(999));
+        assertEquals("10,000", Formatting.count(10000));
+    }
 }
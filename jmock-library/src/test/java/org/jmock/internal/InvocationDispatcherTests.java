@@ -1,10 +1,25 @@
 package org.jmock.internal;
 
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import junit.framework.TestCase;
 
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.core.IsAnything;
 import org.jmock.api.ExpectationError;
 import org.jmock.api.Invocation;
 import org.jmock.internal.InvocationDispatcher;
+import org.jmock.internal.matcher.AllParametersMatcher;
+import org.jmock.internal.matcher.MockObjectMatcher;
+import org.jmock.lib.action.ReturnValueAction;
+import org.jmock.lib.action.ThrowAction;
 import org.jmock.support.MethodFactory;
 import org.jmock.support.MockExpectation;
 
@@ -85,4 +100,309 @@ public class InvocationDispatcherTests extends TestCase {
         assertFalse("should not be satisfied if no expectations are satisfied",
                     dispatcherNone.isSatisfied());
     }
+
+    public void testInvokesFirstMatchingExpectationInOrderOfDeclarationWhetherOrNotItIsForAKnownMockObjectAndMethod() throws Throwable {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        Invocation invocation = new Invocation(mockObject, method, Invocation.NO_PARAMETERS);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.exactly(1), "first"));
+        dispatcher.add(expectationOf(new IsAnything<Object>(), method, Cardinality.ALLOWING, "second"));
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, "third"));
+        
+        assertEquals("first", dispatcher.dispatch(invocation));
+        assertEquals("second", dispatcher.dispatch(invocation));
+    }
+    
+    public void testDoesNotInvokeExpectationsForOtherMockObjects() throws Throwable {
+        Object mockObject = "mockObject";
+        Object otherMockObject = "otherMockObject";
+        Method method = methodFactory.newMethod("method", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.add(expectationOf(new MockObjectMatcher(otherMockObject), method, Cardinality.ALLOWING, "other"));
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, "expected"));
+        
+        assertEquals("expected", dispatcher.dispatch(new Invocation(mockObject, method, Invocation.NO_PARAMETERS)));
+        assertEquals("other", dispatcher.dispatch(new Invocation(otherMockObject, method, Invocation.NO_PARAMETERS)));
+    }
+    
+    public void testForgetsAllExpectationsWhenCleared() throws Throwable {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, "result"));
+        dispatcher.clear();
+        
+        try {
+            dispatcher.dispatch(new Invocation(mockObject, method, Invocation.NO_PARAMETERS));
+            fail("should have thrown ExpectationError");
+        }
+        catch (ExpectationError e) {
+            // expected
+        }
+    }
+    
+    public void testCanRememberWhichExpectationMatchedAnInvocation() throws Throwable {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        Invocation invocation = new Invocation(mockObject, method, Invocation.NO_PARAMETERS);
+        CountingMatcher notMatching = new CountingMatcher(false);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.setCachesMatches(true);
+        dispatcher.add(expectationOf(notMatching, method, Cardinality.ALLOWING, "not matching"));
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, "matching"));
+        
+        assertEquals("matching", dispatcher.dispatch(invocation));
+        assertEquals("matching", dispatcher.dispatch(new Invocation(mockObject, method, Invocation.NO_PARAMETERS)));
+        assertEquals("matching", dispatcher.dispatch(invocation));
+        assertEquals("number of times non-matching expectation was tried", 1, notMatching.count);
+        
+        dispatcher.add(expectationOf(new IsAnything<Object>(), method, Cardinality.ALLOWING, "added"));
+        
+        assertEquals("matching", dispatcher.dispatch(invocation));
+        assertEquals("number of times non-matching expectation was tried after adding an expectation", 2, notMatching.count);
+    }
+    
+    public void testDoesNotUseRememberedMatchOnceItIsUsedUp() throws Throwable {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        Invocation invocation = new Invocation(mockObject, method, Invocation.NO_PARAMETERS);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.setCachesMatches(true);
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.exactly(1), "first"));
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, "second"));
+        
+        assertEquals("first", dispatcher.dispatch(invocation));
+        assertEquals("second", dispatcher.dispatch(invocation));
+    }
+    
+    public void testDoesNotShareRememberedMatchesBetweenEqualButDifferentParameters() throws Throwable {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", new Class<?>[]{List.class}, String.class, MethodFactory.NO_EXCEPTIONS);
+        List<String> parameter = new ArrayList<String>();
+        List<String> equalParameter = new ArrayList<String>();
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.setCachesMatches(true);
+        InvocationExpectation sameParameter = expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.exactly(1), "same");
+        sameParameter.setParametersMatcher(new AllParametersMatcher(Arrays.<Matcher<?>>asList(sameInstance(parameter))));
+        dispatcher.add(sameParameter);
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, "any"));
+        
+        assertEquals("any", dispatcher.dispatch(new Invocation(mockObject, method, equalParameter)));
+        assertEquals("same", dispatcher.dispatch(new Invocation(mockObject, method, parameter)));
+        assertTrue("should be satisfied", dispatcher.isSatisfied());
+    }
+    
+    public void testRemembersMatchesOfPrimitiveParametersByValue() throws Throwable {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", new Class<?>[]{int.class}, String.class, MethodFactory.NO_EXCEPTIONS);
+        CountingMatcher notMatching = new CountingMatcher(false);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.setCachesMatches(true);
+        dispatcher.add(expectationOf(notMatching, method, Cardinality.ALLOWING, "not matching"));
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, "matching"));
+        
+        assertEquals("matching", dispatcher.dispatch(new Invocation(mockObject, method, new Integer(1000))));
+        assertEquals("matching", dispatcher.dispatch(new Invocation(mockObject, method, new Integer(1000))));
+        assertEquals("number of times non-matching expectation was tried", 1, notMatching.count);
+    }
+    
+    public void testRemembersMatchesOfUnboxedParametersByValue() throws Throwable {
+        Object mockObject = "mockObject";
+        Class<?>[] parameterTypes = new Class<?>[]{long.class};
+        Method method = methodFactory.newMethod("method", parameterTypes, String.class, MethodFactory.NO_EXCEPTIONS);
+        CountingMatcher notMatching = new CountingMatcher(false);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.setCachesMatches(true);
+        dispatcher.add(expectationOf(notMatching, method, Cardinality.ALLOWING, "not matching"));
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, "matching"));
+        
+        assertEquals("matching", dispatcher.dispatch(new Invocation(mockObject, method, parameterTypes, null, new long[]{1000L})));
+        assertEquals("matching", dispatcher.dispatch(new Invocation(mockObject, method, parameterTypes, null, new long[]{1000L})));
+        assertEquals("number of times non-matching expectation was tried", 1, notMatching.count);
+        
+        assertEquals("matching", dispatcher.dispatch(new Invocation(mockObject, method, parameterTypes, null, new long[]{2000L})));
+        assertEquals("number of times non-matching expectation was tried", 2, notMatching.count);
+    }
+    
+    public void testForgetsRememberedMatchesWhenAStateMachineChangesState() throws Throwable {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        Invocation invocation = new Invocation(mockObject, method, Invocation.NO_PARAMETERS);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.setCachesMatches(true);
+        StateMachine readiness = dispatcher.newStateMachine("readiness");
+        
+        InvocationExpectation whenReady = expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, "ready");
+        whenReady.addOrderingConstraint(new InStateOrderingConstraint(readiness.is("ready")));
+        dispatcher.add(whenReady);
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, "not ready"));
+        
+        assertEquals("not ready", dispatcher.dispatch(invocation));
+        readiness.become("ready");
+        assertEquals("ready", dispatcher.dispatch(invocation));
+    }
+    
+    public void testForgetsRememberedMatchesWhenASequenceAdvances() throws Throwable {
+        Object mockObject = "mockObject";
+        Method first = methodFactory.newMethod("first", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        Method second = methodFactory.newMethod("second", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        Invocation invocationOfSecond = new Invocation(mockObject, second, Invocation.NO_PARAMETERS);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.setCachesMatches(true);
+        NamedSequence sequence = new NamedSequence("sequence");
+        
+        InvocationExpectation firstInSequence = expectationOf(new MockObjectMatcher(mockObject), first, Cardinality.exactly(1), "first");
+        InvocationExpectation secondInSequence = expectationOf(new MockObjectMatcher(mockObject), second, Cardinality.exactly(1), "second");
+        sequence.constrainAsNextInSequence(firstInSequence);
+        sequence.constrainAsNextInSequence(secondInSequence);
+        dispatcher.add(firstInSequence);
+        dispatcher.add(secondInSequence);
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), second, Cardinality.ALLOWING, "out of sequence"));
+        
+        assertEquals("out of sequence", dispatcher.dispatch(invocationOfSecond));
+        assertEquals("first", dispatcher.dispatch(new Invocation(mockObject, first, Invocation.NO_PARAMETERS)));
+        assertEquals("second", dispatcher.dispatch(invocationOfSecond));
+    }
+    
+    public void testTracksSatisfactionOfInvocationExpectationsAsTheyAreInvoked() throws Throwable {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        Invocation invocation = new Invocation(mockObject, method, Invocation.NO_PARAMETERS);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.exactly(2), "result"));
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, "allowed"));
+        
+        assertFalse("should not be satisfied before invocation", dispatcher.isSatisfied());
+        dispatcher.dispatch(invocation);
+        assertFalse("should not be satisfied after 1 invocation", dispatcher.isSatisfied());
+        dispatcher.dispatch(invocation);
+        assertTrue("should be satisfied after 2 invocations", dispatcher.isSatisfied());
+        dispatcher.dispatch(invocation);
+        assertTrue("should be satisfied after 3 invocations", dispatcher.isSatisfied());
+    }
+    
+    public void testForgetsUnsatisfiedExpectationsWhenCleared() {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.exactly(1), "result"));
+        dispatcher.add(new MockExpectation(NOT_RELEVANT, false, NOT_RELEVANT));
+        dispatcher.clear();
+        
+        assertTrue("should be satisfied", dispatcher.isSatisfied());
+    }
+    
+    public void testAsksOtherKindsOfExpectationWhetherTheyAreSatisfied() throws Throwable {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, "result"));
+        dispatcher.add(new MockExpectation(NOT_RELEVANT, true, NOT_RELEVANT));
+        assertTrue("should be satisfied", dispatcher.isSatisfied());
+        
+        dispatcher.add(new MockExpectation(NOT_RELEVANT, false, NOT_RELEVANT));
+        assertFalse("should not be satisfied", dispatcher.isSatisfied());
+    }
+    
+    public void testLeavesPureStubsDeclaredAfterOtherMatchingExpectationsOutOfTheStubTable() {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        Method otherMethod = methodFactory.newMethod("otherMethod", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.add(expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.exactly(1), "expected"));
+        dispatcher.add(pureStubOf(mockObject, method, "stubbed after expectation"));
+        dispatcher.add(pureStubOf(mockObject, otherMethod, "stubbed"));
+        
+        assertNull("should not file stub declared after expectation",
+                   dispatcher.getStubTable().stubFor(new Invocation(mockObject, method, Invocation.NO_PARAMETERS)));
+        assertNotNull("should file stub of other method",
+                      dispatcher.getStubTable().stubFor(new Invocation(mockObject, otherMethod, Invocation.NO_PARAMETERS)));
+    }
+    
+    public void testDispatchesPureStubsDeclaredAfterOtherMatchingExpectationsInOrder() throws Throwable {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        Invocation invocation = new Invocation(mockObject, method, Invocation.NO_PARAMETERS);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        dispatcher.add(expectationOf(new IsAnything<Object>(), method, Cardinality.exactly(1), "expected"));
+        dispatcher.add(pureStubOf(mockObject, method, "stubbed"));
+        
+        assertNull("should not file stub", dispatcher.getStubTable().stubFor(invocation));
+        assertEquals("expected", dispatcher.dispatch(invocation));
+        assertEquals("stubbed", dispatcher.dispatch(invocation));
+    }
+    
+    public void testReplaysInvocationsWithoutPerformingTheirActions() throws Throwable {
+        Object mockObject = "mockObject";
+        Method method = methodFactory.newMethod("method", MethodFactory.NO_ARGUMENTS, String.class, MethodFactory.NO_EXCEPTIONS);
+        Invocation invocation = new Invocation(mockObject, method, Invocation.NO_PARAMETERS);
+        
+        InvocationDispatcher dispatcher = new InvocationDispatcher();
+        StateMachine progress = dispatcher.newStateMachine("progress");
+        InvocationExpectation expectation = expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.exactly(1), "result");
+        expectation.setAction(new ThrowAction(new IllegalStateException("should not be performed")));
+        expectation.addSideEffect(new ChangeStateSideEffect(progress.is("done")));
+        dispatcher.add(expectation);
+        
+        dispatcher.replay(invocation);
+        
+        assertTrue("should be satisfied", dispatcher.isSatisfied());
+        assertTrue("should have performed side effect", progress.is("done").isActive());
+        try {
+            dispatcher.replay(invocation);
+            fail("should have thrown ExpectationError");
+        }
+        catch (ExpectationError e) {
+            // expected
+        }
+    }
+    
+    private InvocationExpectation pureStubOf(Object mockObject, Method method, String result) {
+        InvocationExpectation stub = expectationOf(new MockObjectMatcher(mockObject), method, Cardinality.ALLOWING, result);
+        stub.setPureStub(true);
+        return stub;
+    }
+    
+    private static class CountingMatcher extends BaseMatcher<Object> {
+        private final boolean result;
+        public int count = 0;
+        
+        public CountingMatcher(boolean result) {
+            this.result = result;
+        }
+        
+        public boolean matches(Object item) {
+            count++;
+            return result;
+        }
+        
+        public void describeTo(Description description) {
+            description.appendText("counting matcher");
+        }
+    }
+    
+    private InvocationExpectation expectationOf(Matcher<?> objectMatcher, Method method, Cardinality cardinality, String result) {
+        InvocationExpectation expectation = new InvocationExpectation();
+        expectation.setObjectMatcher(objectMatcher);
+        expectation.setMethod(method);
+        expectation.setCardinality(cardinality);
+        expectation.setAction(new ReturnValueAction(result));
+        return expectation;
+    }
 }
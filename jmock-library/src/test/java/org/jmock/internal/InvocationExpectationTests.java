@@ -4,6 +4,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.sameInstance;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
@@ -13,6 +14,7 @@ import org.hamcrest.Matcher;
 import org.hamcrest.StringDescription;
 import org.jmock.api.Invocation;
 import org.jmock.internal.matcher.AllParametersMatcher;
+import org.jmock.internal.matcher.MockObjectMatcher;
 import org.jmock.lib.action.ReturnValueAction;
 import org.jmock.support.AssertThat;
 import org.jmock.support.MethodFactory;
@@ -206,6 +208,54 @@ public class InvocationExpectationTests extends TestCase {
         assertTrue(expectation.isSatisfied());
     }
     
+    public void testCountsItselfAsUnsatisfiedUntilInvokedTheRequiredNumberOfTimes() throws Throwable {
+        Invocation invocation = new Invocation(targetObject, method, Invocation.NO_PARAMETERS);
+        AtomicInteger unsatisfiedCount = new AtomicInteger(0);
+        
+        expectation.setCardinality(new Cardinality(2, 3));
+        expectation.trackSatisfactionWith(unsatisfiedCount);
+        assertEquals("unsatisfied count before invocation", 1, unsatisfiedCount.get());
+        
+        expectation.invoke(invocation);
+        assertEquals("unsatisfied count after 1 invocation", 1, unsatisfiedCount.get());
+        
+        assertTrue("should claim invocation", expectation.claimInvocation());
+        assertEquals("unsatisfied count after 2 invocations", 0, unsatisfiedCount.get());
+        
+        expectation.invoke(invocation);
+        assertEquals("unsatisfied count after 3 invocations", 0, unsatisfiedCount.get());
+    }
+    
+    public void testIsNotCountedAsUnsatisfiedIfNoInvocationsAreRequired() {
+        AtomicInteger unsatisfiedCount = new AtomicInteger(0);
+        
+        expectation.setCardinality(Cardinality.ALLOWING);
+        expectation.trackSatisfactionWith(unsatisfiedCount);
+        
+        assertEquals("unsatisfied count", 0, unsatisfiedCount.get());
+    }
+    
+    public void testIsFiledInAStubTableOnlyIfItIsAPureStub() throws Throwable {
+        Invocation invocation = new Invocation(targetObject, method, Invocation.NO_PARAMETERS);
+        StubTable table = new StubTable();
+        
+        expectation.setObjectMatcher(new MockObjectMatcher(targetObject));
+        expectation.setMethod(method);
+        expectation.setAction(new ReturnValueAction(null));
+        expectation.addTo(table, new ExpectationIndex());
+        
+        assertNotNull("should be found in table", table.stubFor(invocation));
+        
+        expectation.addOrderingConstraint(new FakeOrderingConstraint());
+        try {
+            expectation.addTo(new StubTable(), new ExpectationIndex());
+            fail("should have thrown IllegalStateException");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+    
     public void testMatchesIfAllOrderingConstraintsMatch() {
         FakeOrderingConstraint orderingConstraint1 = new FakeOrderingConstraint();
         FakeOrderingConstraint orderingConstraint2 = new FakeOrderingConstraint();
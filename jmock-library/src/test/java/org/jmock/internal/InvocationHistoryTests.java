@@ -0,0 +1,90 @@
+package org.jmock.internal;
+
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+import org.hamcrest.StringDescription;
+import org.jmock.api.Invocation;
+import org.jmock.support.MethodFactory;
+
+public class InvocationHistoryTests extends TestCase {
+    MethodFactory methodFactory = new MethodFactory();
+    Method method = methodFactory.newMethod("method");
+    
+    InvocationHistory history = new InvocationHistory();
+    
+    public void testDescribesThatNothingHappenedWhenEmpty() {
+        assertEquals(" nothing!", StringDescription.toString(history));
+    }
+    
+    public void testDescribesEveryInvocationByDefault() {
+        history.add(invocationOf("a"));
+        history.add(invocationOf("b"));
+        history.add(invocationOf("c"));
+        
+        assertEquals("\n  a.method()\n  b.method()\n  c.method()\n", StringDescription.toString(history));
+    }
+    
+    public void testRemembersOnlyTheMostRecentInvocationsUpToTheLimit() {
+        history.setLimit(2);
+        
+        history.add(invocationOf("a"));
+        history.add(invocationOf("b"));
+        history.add(invocationOf("c"));
+        history.add(invocationOf("d"));
+        
+        assertEquals("\n  2 earlier invocations not shown\n  c.method()\n  d.method()\n", 
+                     StringDescription.toString(history));
+    }
+    
+    public void testCanForgetEveryInvocation() {
+        history.setLimit(0);
+        
+        history.add(invocationOf("a"));
+        
+        assertEquals("\n  1 earlier invocation not shown\n", StringDescription.toString(history));
+    }
+    
+    public void testForgetsInvocationsBeyondANewLimit() {
+        history.add(invocationOf("a"));
+        history.add(invocationOf("b"));
+        
+        history.setLimit(1);
+        
+        assertEquals("\n  1 earlier invocation not shown\n  b.method()\n", StringDescription.toString(history));
+    }
+    
+    public void testForgetsEverythingWhenCleared() {
+        history.setLimit(1);
+        history.add(invocationOf("a"));
+        history.add(invocationOf("b"));
+        
+        history.clear();
+        
+        assertEquals(" nothing!", StringDescription.toString(history));
+    }
+    
+    public void testDescribesConsecutiveIdenticalInvocationsOnce() {
+        for (int i = 0; i < 10000; i++) {
+            history.add(invocationOf("a"));
+        }
+        history.add(invocationOf("b"));
+        history.add(invocationOf("a"));
+        
+        assertEquals("\n  a.method() x 10,000\n  b.method()\n  a.method()\n", StringDescription.toString(history));
+    }
+    
+    public void testRejectsNegativeLimit() {
+        try {
+            history.setLimit(-1);
+            fail("should have thrown IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected) {
+        }
+    }
+    
+    private Invocation invocationOf(String invokedObject) {
+        return new Invocation(invokedObject, method);
+    }
+}
@@ -0,0 +1,110 @@
+package org.jmock.internal;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jmock.api.Invocation;
+import org.jmock.support.MethodFactory;
+
+public class InvocationLogTests extends TestCase {
+    MethodFactory methodFactory = new MethodFactory();
+    Method method = methodFactory.newMethod("method");
+
+    InvocationLog log = new InvocationLog(2);
+
+    public void testReplaysInvocationsInTheOrderTheyWereAppended() {
+        Invocation a = invocationOf("a");
+        Invocation b = invocationOf("b");
+        Invocation c = invocationOf("c");
+
+        log.append(a);
+        log.append(b);
+        log.append(c);
+
+        assertEquals(list(a, b, c), log.takeUnreplayed());
+    }
+
+    public void testReplaysOnlyInvocationsAppendedSinceTheLastReplay() {
+        Invocation a = invocationOf("a");
+        Invocation b = invocationOf("b");
+
+        log.append(a);
+        assertEquals(list(a), log.takeUnreplayed());
+
+        log.append(b);
+        assertEquals(list(b), log.takeUnreplayed());
+        assertEquals(list(), log.takeUnreplayed());
+    }
+
+    public void testDoesNotHoldOnToReplayedInvocations() {
+        WeakReference<Invocation> replayed = new WeakReference<Invocation>(appendAndReplay());
+
+        for (int i = 0; i < 5; i++) {
+            log.append(invocationOf("later" + i));
+        }
+        log.takeUnreplayed();
+        log.append(invocationOf("unreplayed"));
+        System.gc();
+
+        assertNull("replayed invocation should have been released", replayed.get());
+    }
+
+    public void testLogsEveryInvocationAppendedByConcurrentThreads() throws InterruptedException {
+        final int threadCount = 4;
+        final int invocationsPerThread = 10000;
+        final Invocation[] invocations = new Invocation[threadCount];
+        Thread[] threads = new Thread[threadCount];
+
+        for (int t = 0; t < threadCount; t++) {
+            final Invocation invocation = invocationOf("thread" + t);
+            invocations[t] = invocation;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < invocationsPerThread; i++) {
+                        log.append(invocation);
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<Invocation> logged = log.takeUnreplayed();
+        assertEquals("number of invocations logged", threadCount * invocationsPerThread, logged.size());
+        for (Invocation invocation : invocations) {
+            int count = 0;
+            for (Invocation loggedInvocation : logged) {
+                if (loggedInvocation == invocation) {
+                    count++;
+                }
+            }
+            assertEquals("number of invocations logged from one thread", invocationsPerThread, count);
+        }
+    }
+
+    private Invocation appendAndReplay() {
+        log.append(invocationOf("replayed"));
+        return log.takeUnreplayed().get(0);
+    }
+
+    private Invocation invocationOf(String objectName) {
+        return new Invocation(objectName, method, Invocation.NO_PARAMETERS);
+    }
+
+    private static List<Invocation> list(Invocation... invocations) {
+        List<Invocation> list = new ArrayList<Invocation>();
+        for (Invocation invocation : invocations) {
+            list.add(invocation);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,71 @@
+package org.jmock.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jmock.api.Invocation;
+import org.jmock.support.MethodFactory;
+
+public class NamedSequenceTests extends TestCase {
+    MethodFactory methodFactory = new MethodFactory();
+    Invocation invocation = new Invocation("invokedObject", methodFactory.newMethod("method"));
+    
+    NamedSequence sequence = new NamedSequence("sequence");
+    List<CountingExpectation> expectations = new ArrayList<CountingExpectation>();
+    
+    public void testOnlyAllowsInvocationsInOrder() throws Throwable {
+        addExpectations(3);
+        
+        assertTrue("should allow first", expectations.get(0).matches(invocation));
+        assertFalse("should not allow second", expectations.get(1).matches(invocation));
+        assertFalse("should not allow third", expectations.get(2).matches(invocation));
+        
+        expectations.get(0).invoke(invocation);
+        
+        assertTrue("should allow second", expectations.get(1).matches(invocation));
+        assertFalse("should not allow third", expectations.get(2).matches(invocation));
+        
+        expectations.get(1).invoke(invocation);
+        
+        assertTrue("should allow third", expectations.get(2).matches(invocation));
+    }
+    
+    public void testDoesNotCheckEarlierExpectationsAgainOnceTheyAreSatisfied() throws Throwable {
+        final int length = 1000;
+        addExpectations(length);
+        
+        for (CountingExpectation expectation : expectations) {
+            assertTrue("should allow next in sequence", expectation.matches(invocation));
+            assertTrue("should allow next in sequence when asked again", expectation.matches(invocation));
+            expectation.invoke(invocation);
+        }
+        
+        int checks = 0;
+        for (CountingExpectation expectation : expectations) {
+            checks += expectation.satisfactionChecks;
+        }
+        assertTrue("should check satisfaction a number of times proportional to the length of the sequence, but checked " + checks + " times",
+                   checks <= 2 * length);
+    }
+    
+    private void addExpectations(int count) {
+        for (int i = 0; i < count; i++) {
+            CountingExpectation expectation = new CountingExpectation();
+            expectation.setCardinality(Cardinality.exactly(1));
+            sequence.constrainAsNextInSequence(expectation);
+            expectations.add(expectation);
+        }
+    }
+    
+    private static class CountingExpectation extends InvocationExpectation {
+        public int satisfactionChecks = 0;
+        
+        @Override
+        public boolean isSatisfied() {
+            satisfactionChecks++;
+            return super.isSatisfied();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.jmock.internal;
+
+import junit.framework.TestCase;
+
+public class ObjectMethodTests extends TestCase {
+    public interface LooksLikeObject {
+        int hashCode(int seed);
+        Object toString(String prefix);
+        boolean equals(String other);
+        int finalize();
+        void doSomething();
+    }
+
+    public static class OverridesObject {
+        @Override
+        public int hashCode() { return 0; }
+        @Override
+        public String toString() { return "overridden"; }
+        @Override
+        public boolean equals(Object other) { return false; }
+        @Override
+        protected void finalize() {}
+    }
+
+    public void testClassifiesTheMethodsOfObjectThatMockObjectsFake() throws Exception {
+        assertEquals(ObjectMethod.HASH_CODE, ObjectMethod.of(Object.class.getMethod("hashCode")));
+        assertEquals(ObjectMethod.TO_STRING, ObjectMethod.of(Object.class.getMethod("toString")));
+        assertEquals(ObjectMethod.EQUALS, ObjectMethod.of(Object.class.getMethod("equals", Object.class)));
+        assertEquals(ObjectMethod.FINALIZE, ObjectMethod.of(Object.class.getDeclaredMethod("finalize")));
+    }
+
+    public void testClassifiesMethodsThatOverrideThem() throws Exception {
+        assertEquals(ObjectMethod.HASH_CODE, ObjectMethod.of(OverridesObject.class.getMethod("hashCode")));
+        assertEquals(ObjectMethod.TO_STRING, ObjectMethod.of(OverridesObject.class.getMethod("toString")));
+        assertEquals(ObjectMethod.EQUALS, ObjectMethod.of(OverridesObject.class.getMethod("equals", Object.class)));
+        assertEquals(ObjectMethod.FINALIZE, ObjectMethod.of(OverridesObject.class.getDeclaredMethod("finalize")));
+    }
+
+    public void testDoesNotClassifyMethodsWithTheSameNamesButDifferentSignatures() throws Exception {
+        assertEquals(ObjectMethod.NONE, ObjectMethod.of(LooksLikeObject.class.getMethod("hashCode", int.class)));
+        assertEquals(ObjectMethod.NONE, ObjectMethod.of(LooksLikeObject.class.getMethod("toString", String.class)));
+        assertEquals(ObjectMethod.NONE, ObjectMethod.of(LooksLikeObject.class.getMethod("equals", String.class)));
+        assertEquals(ObjectMethod.NONE, ObjectMethod.of(LooksLikeObject.class.getMethod("finalize")));
+        assertEquals(ObjectMethod.NONE, ObjectMethod.of(LooksLikeObject.class.getMethod("doSomething")));
+    }
+}
@@ -116,6 +116,31 @@ public class StateMachineTests extends TestCase {
         assertEquals("stateMachineName is not A", StringDescription.toString(stateMachine.isNot("A")));
     }
     
+    public void testCountsChangesOfState() {
+        StateMachine versioned = new StateMachine("versioned");
+        int initialVersion = versioned.version();
+        
+        versioned.startsAs("A");
+        assertEquals("version after entering first state", initialVersion + 1, versioned.version());
+        
+        versioned.is("A").activate();
+        assertEquals("version after entering the current state again", initialVersion + 1, versioned.version());
+        
+        versioned.become("B");
+        assertEquals("version after changing state", initialVersion + 2, versioned.version());
+    }
+    
+    public void testTreatsStatesDeclaredUpFrontLikeOtherStates() {
+        StateMachine declared = new StateMachine("declared", "A", "B");
+        
+        declared.startsAs("B");
+        
+        assertTrue("should report being in declared state", declared.is("B").isActive());
+        assertFalse("should not report being in other declared state", declared.is("A").isActive());
+        assertFalse("should not report being in undeclared state", declared.is("C").isActive());
+        assertEquals("declared is B", declared.toString());
+    }
+    
     private <T> Set<T> except(Set<T> s, T e) {
         Set<T> result = new HashSet<T>(s);
         result.remove(e);
@@ -0,0 +1,100 @@
+package org.jmock.internal;
+
+import static org.hamcrest.Matchers.anything;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.jmock.api.Invocation;
+import org.jmock.internal.matcher.AllParametersMatcher;
+import org.jmock.support.AssertThat;
+import org.jmock.support.MethodFactory;
+
+public class StubTableTests extends TestCase {
+    MethodFactory methodFactory = new MethodFactory();
+    Method method = methodFactory.newMethod("method", new Class<?>[]{String.class}, String.class, MethodFactory.NO_EXCEPTIONS);
+    Method otherMethod = methodFactory.newMethod("otherMethod", new Class<?>[]{String.class}, String.class, MethodFactory.NO_EXCEPTIONS);
+    Object mockObject = new Object();
+
+    StubTable table = new StubTable();
+
+    public void testFindsStubsByMockObjectAndMethod() {
+        table.add(mockObject, method, anyParameters(), "stubbed", new InvocationExpectation());
+
+        assertEquals("stubbed", table.stubFor(new Invocation(mockObject, method, "x")).invoke());
+        assertNull("should not find stub for other method",
+                   table.stubFor(new Invocation(mockObject, otherMethod, "x")));
+        assertNull("should not find stub for other mock object",
+                   table.stubFor(new Invocation(new Object(), method, "x")));
+    }
+
+    public void testFindsFirstStubWhoseParametersMatchInTheOrderTheyWereAdded() {
+        table.add(mockObject, method, parametersEqualTo("a"), "first a", new InvocationExpectation());
+        table.add(mockObject, method, anyParameters(), "any", new InvocationExpectation());
+        table.add(mockObject, method, parametersEqualTo("a"), "second a", new InvocationExpectation());
+
+        assertEquals("first a", table.stubFor(new Invocation(mockObject, method, "a")).invoke());
+        assertEquals("any", table.stubFor(new Invocation(mockObject, method, "b")).invoke());
+    }
+
+    public void testDoesNotFindStubIfNoParametersMatch() {
+        table.add(mockObject, method, parametersEqualTo("a"), "a", new InvocationExpectation());
+
+        assertNull("should not find stub", table.stubFor(new Invocation(mockObject, method, "b")));
+    }
+
+    public void testCountsInvocationsOfTheStubbedExpectation() {
+        InvocationExpectation expectation = new InvocationExpectation();
+        table.add(mockObject, method, anyParameters(), "stubbed", expectation);
+
+        StubTable.Stub stub = table.stubFor(new Invocation(mockObject, method, "x"));
+        stub.invoke();
+        stub.invoke();
+
+        AssertThat.stringIncludes("should describe invocations",
+                                  "already invoked 2 times", StringDescription.toString(expectation));
+    }
+
+    public void testForgetsStubsWhenClearedWithoutChangingStubsAlreadyFound() {
+        table.add(mockObject, method, anyParameters(), "stubbed", new InvocationExpectation());
+        StubTable.Stub found = table.stubFor(new Invocation(mockObject, method, "x"));
+
+        table.clear();
+
+        assertNull("should not find stub after clearing", table.stubFor(new Invocation(mockObject, method, "x")));
+        assertEquals("stub found before clearing", "stubbed", found.invoke());
+
+        table.add(mockObject, method, anyParameters(), "added after clearing", new InvocationExpectation());
+        assertEquals("added after clearing", table.stubFor(new Invocation(mockObject, method, "x")).invoke());
+    }
+
+    public void testLooksUpMockObjectsByIdentity() {
+        Object mockThatCannotBeHashed = new Object() {
+            @Override
+            public int hashCode() {
+                throw new UnsupportedOperationException("hashCode");
+            }
+            @Override
+            public boolean equals(Object other) {
+                throw new UnsupportedOperationException("equals");
+            }
+        };
+
+        table.add(mockThatCannotBeHashed, method, anyParameters(), "stubbed", new InvocationExpectation());
+
+        assertEquals("stubbed", table.stubFor(new Invocation(mockThatCannotBeHashed, method, "x")).invoke());
+    }
+
+    private ParametersMatcher anyParameters() {
+        return new AllParametersMatcher(Arrays.<Matcher<?>>asList(anything()));
+    }
+
+    private ParametersMatcher parametersEqualTo(String value) {
+        return new AllParametersMatcher(Arrays.<Matcher<?>>asList(equalTo(value)));
+    }
+}
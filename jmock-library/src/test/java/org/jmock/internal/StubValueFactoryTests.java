@@ -0,0 +1,69 @@
+package org.jmock.internal;
+
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import org.jmock.support.SyntheticEmptyInterfaceClassLoader;
+
+public class StubValueFactoryTests extends TestCase {
+    public interface AnInterface {}
+    
+    public static abstract class AnAbstractClass {}
+    
+    StubValueFactory factory = new StubValueFactory();
+    
+    public void testCreatesADistinctStubValueEachTime() {
+        assertDistinctStubValuesOf(AnInterface.class);
+        assertDistinctStubValuesOf(AnAbstractClass.class);
+        assertDistinctStubValuesOf(Date.class);
+        assertDistinctStubValuesOf(String[].class);
+        assertDistinctStubValuesOf(int[].class);
+        assertDistinctStubValuesOf(Integer.class);
+    }
+    
+    public void testCreatesEmptyArrays() {
+        assertEquals(0, ((String[])factory.newStubValue(String[].class)).length);
+    }
+    
+    public void testLooksUpClassesByName() throws ClassNotFoundException {
+        assertSame(Date.class, factory.classNamed("java.util.Date"));
+        assertSame(AnInterface.class, factory.classNamed(AnInterface.class.getName()));
+        assertSame(String[].class, factory.classNamed("[Ljava.lang.String;"));
+    }
+    
+    public void testLooksUpClassesThatJMockCannotSeeWithTheContextClassLoader() throws ClassNotFoundException {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader originalContextClassLoader = thread.getContextClassLoader();
+        final ClassLoader contextClassLoader = new SyntheticEmptyInterfaceClassLoader("\\$.*");
+        
+        thread.setContextClassLoader(contextClassLoader);
+        try {
+            Class<?> clazz = factory.classNamed("$TypeOnlyVisibleToTheContextClassLoader$");
+            
+            assertSame(contextClassLoader, clazz.getClassLoader());
+            assertSame("same class when looked up again", clazz, factory.classNamed("$TypeOnlyVisibleToTheContextClassLoader$"));
+        }
+        finally {
+            thread.setContextClassLoader(originalContextClassLoader);
+        }
+    }
+    
+    public void testReportsClassesThatCannotBeFound() {
+        try {
+            factory.classNamed("$NoSuchClass$");
+            fail("should have thrown ClassNotFoundException");
+        }
+        catch (ClassNotFoundException expected) {
+        }
+    }
+    
+    private void assertDistinctStubValuesOf(Class<?> type) {
+        Object first = factory.newStubValue(type);
+        Object second = factory.newStubValue(type);
+        
+        assertTrue("should be a " + type, type.isInstance(first));
+        assertTrue("should be a " + type, type.isInstance(second));
+        assertNotSame("stub values of " + type, first, second);
+    }
+}
@@ -0,0 +1,151 @@
+package org.jmock.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.hamcrest.Description;
+import org.hamcrest.SelfDescribing;
+import org.hamcrest.StringDescription;
+
+public class TruncatingDescriptionTests extends TestCase {
+    static final Object UNDESCRIBABLE = new Object() {
+        @Override
+        public String toString() {
+            throw new AssertionError("should not be described");
+        }
+    };
+    
+    StringDescription target = new StringDescription();
+    TruncatingDescription description = new TruncatingDescription(target, 5, 3, 40);
+    
+    public void testDescribesSmallValuesAsUsual() {
+        TruncatingDescription description = new TruncatingDescription(target);
+        
+        description.appendValueList("(", ", ", ")", 1, "two", 'c', 4L, null, new int[]{5, 6});
+        
+        assertEquals(StringDescription.asString(new SelfDescribing() {
+            public void describeTo(Description d) {
+                d.appendValueList("(", ", ", ")", 1, "two", 'c', 4L, null, new int[]{5, 6});
+            }
+        }), target.toString());
+    }
+    
+    public void testTruncatesLongValues() {
+        description.appendValue("abcdefgh");
+        description.appendText(" ");
+        description.appendValue(new StringBuilder("abcdefgh"));
+        
+        assertEquals("\"abcde...\" <abcde...>", target.toString());
+    }
+    
+    public void testDescribesOnlyTheFirstElementsOfLargeArrays() {
+        description.appendValue(new int[]{1, 2, 3, 4, 5});
+        
+        assertEquals("[<1>, <2>, <3>, ... 2 more]", target.toString());
+    }
+    
+    public void testDescribesLargeCollectionsWithoutCallingTheirToStringMethod() {
+        List<Object> elements = new ArrayList<Object>(Arrays.<Object>asList(1, 2, 3, UNDESCRIBABLE, UNDESCRIBABLE));
+        
+        description.appendValue(elements);
+        
+        assertEquals("<[1, 2, 3, ... 2 more]>", target.toString());
+    }
+    
+    public void testCallsTheToStringMethodOfCollectionsThatOverrideIt() {
+        List<Object> elements = new ArrayList<Object>(Arrays.<Object>asList(1, 2, 3, UNDESCRIBABLE)) {
+            @Override
+            public String toString() {
+                return "a list of its own";
+            }
+        };
+        
+        description.appendValue(elements);
+        
+        assertEquals("<a lis...>", target.toString());
+    }
+    
+    public void testDescribesSmallCollectionsAndMapsAsUsual() {
+        TruncatingDescription description = new TruncatingDescription(target);
+        final List<Object> list = new ArrayList<Object>(Arrays.<Object>asList("one", 2, null));
+        list.add(list);
+        final Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        map.put("key", Arrays.asList(1, 2));
+        map.put(map, "self");
+        
+        description.appendValueList("(", ", ", ")", list, map);
+        
+        assertEquals(StringDescription.asString(new SelfDescribing() {
+            public void describeTo(Description d) {
+                d.appendValueList("(", ", ", ")", list, map);
+            }
+        }), target.toString());
+    }
+    
+    public void testDescribesLargeMapsWithoutCallingTheirToStringMethod() {
+        Map<String, Object> entries = new LinkedHashMap<String, Object>();
+        for (String key : new String[]{"a", "b", "c"}) {
+            entries.put(key, key.charAt(0) - 'a');
+        }
+        entries.put("d", UNDESCRIBABLE);
+        entries.put("e", UNDESCRIBABLE);
+        
+        description.appendValue(entries);
+        
+        assertEquals("<{a=0, b=1, c=2, ... 2 more}>", target.toString());
+    }
+    
+    public void testTruncatesEachElementOfSmallCollections() {
+        description.appendValue(Arrays.asList("abcdefgh", "x"));
+        
+        assertEquals("<[abcde..., x]>", target.toString());
+    }
+    
+    public void testDescribesCollectionsNestedInCollectionsElementByElement() {
+        List<Object> nested = new ArrayList<Object>(Arrays.<Object>asList(1, 2, 3, UNDESCRIBABLE, UNDESCRIBABLE));
+        
+        description.appendValue(Arrays.asList(nested));
+        
+        assertEquals("<[[1, 2, 3, ... 2 more]]>", target.toString());
+    }
+    
+    public void testDescribesCollectionsThatContainEachOtherOnlyOnce() {
+        List<Object> first = new ArrayList<Object>();
+        List<Object> second = new ArrayList<Object>();
+        first.add(second);
+        second.add(first);
+        
+        description.appendValue(first);
+        
+        assertEquals("<[[(this Collection)]]>", target.toString());
+    }
+    
+    public void testStopsDescribingOnceTheLengthLimitIsReached() {
+        final List<SelfDescribing> described = new ArrayList<SelfDescribing>();
+        List<SelfDescribing> items = new ArrayList<SelfDescribing>();
+        for (int i = 0; i < 100; i++) {
+            items.add(new SelfDescribing() {
+                public void describeTo(Description d) {
+                    described.add(this);
+                    d.appendText("012345678901234");
+                }
+            });
+        }
+        
+        description.appendList("", "", "", items);
+        description.appendText("more text");
+        
+        assertTrue("should be truncated", description.isTruncated());
+        assertEquals("0123456789012340123456789012340123456789... (description truncated)", target.toString());
+        assertEquals("number of items described", 3, described.size());
+    }
+    
+    public void testNestedDescriptionsShareOneLimit() {
+        assertSame(description, TruncatingDescription.truncating(description));
+    }
+}
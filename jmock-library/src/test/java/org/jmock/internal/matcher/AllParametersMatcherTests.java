@@ -0,0 +1,66 @@
+package org.jmock.internal.matcher;
+
+import static org.hamcrest.Matchers.equalTo;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
+import org.jmock.api.Invocation;
+import org.jmock.support.MethodFactory;
+
+public class AllParametersMatcherTests extends TestCase {
+    MethodFactory methodFactory = new MethodFactory();
+    Method method = methodFactory.newMethod("method");
+
+    @SuppressWarnings("unchecked")
+    AllParametersMatcher matcher = new AllParametersMatcher(
+        Arrays.<Matcher<?>>asList(equalTo(1), equalTo("two")));
+
+    public void testMatchesParametersOfAnInvocationTheSameWayAsAnArray() {
+        Object[] matching = {1, "two"};
+        Object[] notMatching = {1, "three"};
+
+        assertTrue("should match array", matcher.matches(matching));
+        assertTrue("should match invocation", matcher.matchesParametersOf(invocationWith(matching)));
+
+        assertFalse("should not match array", matcher.matches(notMatching));
+        assertFalse("should not match invocation", matcher.matchesParametersOf(invocationWith(notMatching)));
+    }
+
+    public void testDoesNotMatchInvocationWithDifferentNumberOfParameters() {
+        Invocation tooFew = invocationWith(1);
+
+        assertFalse("should not be compatible", matcher.isCompatibleWithParametersOf(tooFew));
+        assertFalse("should not match", matcher.matchesParametersOf(tooFew));
+    }
+
+    public void testDescribesMismatchOfParametersOfAnInvocationTheSameWayAsAnArray() {
+        Object[] notMatching = {1, "three"};
+
+        StringDescription arrayMismatch = new StringDescription();
+        matcher.describeMismatch(notMatching, arrayMismatch);
+
+        StringDescription invocationMismatch = new StringDescription();
+        matcher.describeMismatchOfParametersOf(invocationWith(notMatching), invocationMismatch);
+
+        assertEquals(arrayMismatch.toString(), invocationMismatch.toString());
+    }
+
+    public void testMatchesExpectedValuesAgainstParametersPassedUnboxed() {
+        Method primitiveMethod = methodFactory.newMethod("method", new Class[]{int.class, String.class}, void.class, new Class[0]);
+        AllParametersMatcher valuesMatcher = new AllParametersMatcher(new Object[]{1, "two"});
+        
+        assertTrue("should match", valuesMatcher.matchesParametersOf(new Invocation(
+            "invokedObject", primitiveMethod, primitiveMethod.getParameterTypes(), new Object[]{null, "two"}, new long[]{1, 0})));
+        assertFalse("should not match", valuesMatcher.matchesParametersOf(new Invocation(
+            "invokedObject", primitiveMethod, primitiveMethod.getParameterTypes(), new Object[]{null, "two"}, new long[]{2, 0})));
+    }
+
+    private Invocation invocationWith(Object... parameters) {
+        return new Invocation("invokedObject", method, parameters);
+    }
+}
@@ -0,0 +1,75 @@
+package org.jmock.internal.matcher;
+
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+public class MethodMatcherTests extends TestCase {
+    public static class Base {
+        public Object value() { return null; }
+        public void doSomething() {}
+        public void doSomething(int i) {}
+        public void doSomethingElse() {}
+    }
+
+    public static class Derived extends Base {
+        @Override
+        public String value() { return null; }
+    }
+
+    Method doSomething;
+    Method doSomethingWithInt;
+    Method doSomethingElse;
+
+    @Override
+    public void setUp() throws Exception {
+        doSomething = Base.class.getMethod("doSomething");
+        doSomethingWithInt = Base.class.getMethod("doSomething", int.class);
+        doSomethingElse = Base.class.getMethod("doSomethingElse");
+    }
+
+    public void testMatchesTheExpectedMethod() {
+        MethodMatcher matcher = new MethodMatcher(doSomething);
+
+        assertTrue("should match", matcher.matches(doSomething));
+        assertTrue("should match when asked again", matcher.matches(doSomething));
+    }
+
+    public void testDoesNotMatchMethodsWithADifferentSignature() {
+        MethodMatcher matcher = new MethodMatcher(doSomething);
+
+        assertFalse("should not match method with different name", matcher.matches(doSomethingElse));
+        assertFalse("should not match method with different parameters", matcher.matches(doSomethingWithInt));
+        assertFalse("should not match when asked again", matcher.matches(doSomethingElse));
+        assertFalse("should not match when asked again", matcher.matches(doSomethingWithInt));
+    }
+
+    public void testMatchesEqualMethodsThatAreNotTheSameInstance() throws Exception {
+        MethodMatcher matcher = new MethodMatcher(doSomething);
+
+        assertTrue("should match", matcher.matches(Base.class.getMethod("doSomething")));
+        assertTrue("should match when asked again", matcher.matches(Base.class.getMethod("doSomething")));
+    }
+
+    public void testResolvesBridgeMethodsToTheCovariantOverride() throws Exception {
+        Method override = Derived.class.getDeclaredMethod("value");
+        Method bridge = bridgeMethodOf(Derived.class, "value");
+
+        MethodMatcher overrideMatcher = new MethodMatcher(override);
+        assertTrue("override matcher should match bridge", overrideMatcher.matches(bridge));
+        assertTrue("override matcher should match bridge when asked again", overrideMatcher.matches(bridge));
+
+        MethodMatcher bridgeMatcher = new MethodMatcher(bridge);
+        assertFalse("bridge matcher should not match override", bridgeMatcher.matches(override));
+        assertFalse("bridge matcher should not match override when asked again", bridgeMatcher.matches(override));
+    }
+
+    private Method bridgeMethodOf(Class<?> type, String name) {
+        for (Method method : type.getDeclaredMethods()) {
+            if (method.isBridge() && method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new AssertionError("no bridge method " + name + " in " + type);
+    }
+}
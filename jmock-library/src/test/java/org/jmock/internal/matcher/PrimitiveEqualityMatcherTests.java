@@ -0,0 +1,67 @@
+package org.jmock.internal.matcher;
+
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+import org.hamcrest.StringDescription;
+import org.hamcrest.core.IsEqual;
+import org.jmock.api.Invocation;
+import org.jmock.support.MethodFactory;
+
+public class PrimitiveEqualityMatcherTests extends TestCase {
+    MethodFactory methodFactory = new MethodFactory();
+    Method method = methodFactory.newMethod("method", 
+        new Class[]{int.class, long.class, double.class}, void.class, new Class[0]);
+    
+    public void testComparesUnboxedParametersWithoutBoxingThem() {
+        Invocation invocation = unboxedInvocation(1000, 2000L, 0.5);
+        
+        assertTrue("int", matcherFor(1000).matchesParameterOf(invocation, 0));
+        assertTrue("long", matcherFor(2000L).matchesParameterOf(invocation, 1));
+        assertTrue("double", matcherFor(0.5).matchesParameterOf(invocation, 2));
+        
+        assertFalse("different int", matcherFor(999).matchesParameterOf(invocation, 0));
+        assertFalse("different long", matcherFor(1999L).matchesParameterOf(invocation, 1));
+        assertFalse("different double", matcherFor(0.25).matchesParameterOf(invocation, 2));
+    }
+    
+    public void testDoesNotMatchEqualValuesOfADifferentType() {
+        Invocation invocation = unboxedInvocation(1, 1L, 1.0);
+        
+        assertFalse("long expected, int passed", matcherFor(1L).matchesParameterOf(invocation, 0));
+        assertFalse("int expected, long passed", matcherFor(1).matchesParameterOf(invocation, 1));
+        assertFalse("long expected, double passed", matcherFor(1L).matchesParameterOf(invocation, 2));
+    }
+    
+    public void testComparesDoublesAsDoubleEqualsDoes() {
+        assertTrue("NaN", matcherFor(Double.NaN).matchesParameterOf(unboxedInvocation(0, 0, Double.NaN), 2));
+        assertFalse("negative zero", matcherFor(0.0).matchesParameterOf(unboxedInvocation(0, 0, -0.0), 2));
+    }
+    
+    public void testComparesBoxedParametersAsIsEqualDoes() {
+        Invocation invocation = new Invocation("invokedObject", method, 1000, 2000L, 0.5);
+        
+        assertTrue("int", matcherFor(1000).matchesParameterOf(invocation, 0));
+        assertFalse("different long", matcherFor(1999L).matchesParameterOf(invocation, 1));
+    }
+    
+    public void testIsDescribedAsAnEqualityMatcher() {
+        assertEquals(StringDescription.toString(new IsEqual<Object>(1000)), 
+                     StringDescription.toString(matcherFor(1000)));
+    }
+    
+    public void testIsOnlyUsedForIntLongAndDoubleValues() {
+        assertFalse("float", PrimitiveEqualityMatcher.equalToParameter(1.0f) instanceof PrimitiveEqualityMatcher);
+        assertFalse("String", PrimitiveEqualityMatcher.equalToParameter("1") instanceof PrimitiveEqualityMatcher);
+    }
+    
+    private PrimitiveEqualityMatcher matcherFor(Object value) {
+        return (PrimitiveEqualityMatcher)PrimitiveEqualityMatcher.equalToParameter(value);
+    }
+    
+    private Invocation unboxedInvocation(int i, long l, double d) {
+        return new Invocation("invokedObject", method, method.getParameterTypes(), null, 
+                              new long[]{i, l, Double.doubleToRawLongBits(d)});
+    }
+}
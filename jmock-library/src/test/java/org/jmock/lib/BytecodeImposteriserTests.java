@@ -0,0 +1,168 @@
+package org.jmock.lib;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import org.jmock.api.Invocation;
+import org.jmock.api.Invokable;
+import org.jmock.internal.CaptureControl;
+import org.jmock.lib.action.VoidAction;
+import org.jmock.support.SyntheticEmptyInterfaceClassLoader;
+
+public class BytecodeImposteriserTests extends TestCase {
+    public interface Calculator {
+        long add(int a, long b);
+        double scale(double value, float factor);
+        String describe(Object o, char c, boolean b);
+        void reset() throws IOException;
+    }
+
+    BytecodeImposteriser imposteriser = new BytecodeImposteriser();
+    Invocation lastInvocation;
+    Object result;
+
+    Invokable mockObject = new Invokable() {
+        public Object invoke(Invocation invocation) throws Throwable {
+            lastInvocation = invocation;
+            return result;
+        }
+    };
+
+    public void testCanOnlyImposteriseInterfaces() {
+        assertTrue("should report that it can imposterise interfaces",
+                   imposteriser.canImposterise(Runnable.class));
+        assertTrue("should report that it cannot imposterise classes",
+                   !imposteriser.canImposterise(Date.class));
+        assertTrue("should report that it cannot imposterise primitive types",
+                   !imposteriser.canImposterise(int.class));
+        assertTrue("should report that it cannot imposterise void",
+                   !imposteriser.canImposterise(void.class));
+    }
+
+    public void testPassesInvocationsToTheInvokable() throws Exception {
+        Calculator calculator = imposteriser.imposterise(mockObject, Calculator.class);
+
+        result = 3L;
+        assertEquals(3L, calculator.add(1, 2L));
+        assertSame("invoked object", calculator, lastInvocation.getInvokedObject());
+        assertEquals("invoked method", Calculator.class.getMethod("add", int.class, long.class), lastInvocation.getInvokedMethod());
+        assertEquals("first parameter", 1, lastInvocation.getParameter(0));
+        assertEquals("second parameter", 2L, lastInvocation.getParameter(1));
+
+        result = 5.0;
+        assertEquals(5.0, calculator.scale(2.5, 2.0f), 0.0);
+        assertEquals("first parameter", 2.5, lastInvocation.getParameter(0));
+        assertEquals("second parameter", 2.0f, lastInvocation.getParameter(1));
+
+        result = "described";
+        Object o = new Object();
+        assertEquals("described", calculator.describe(o, 'c', true));
+        assertSame("first parameter", o, lastInvocation.getParameter(0));
+        assertEquals("second parameter", 'c', lastInvocation.getParameter(1));
+        assertEquals("third parameter", true, lastInvocation.getParameter(2));
+
+        result = null;
+        calculator.reset();
+        assertEquals("invoked method", "reset", lastInvocation.getInvokedMethod().getName());
+        assertEquals("parameter count", 0, lastInvocation.getParameterCount());
+    }
+
+    public void testPassesIntLongAndDoubleParametersWithoutBoxingThem() throws Exception {
+        Calculator calculator = imposteriser.imposterise(mockObject, Calculator.class);
+
+        result = 0L;
+        calculator.add(1000, 2000L);
+        assertTrue("int parameter should be unboxed", lastInvocation.hasUnboxedParameter(0, int.class));
+        assertTrue("long parameter should be unboxed", lastInvocation.hasUnboxedParameter(1, long.class));
+        assertEquals("first parameter", 1000L, lastInvocation.getUnboxedParameterValue(0));
+        assertEquals("second parameter", 2000L, lastInvocation.getUnboxedParameterValue(1));
+
+        result = 0.0;
+        calculator.scale(2.5, 2.0f);
+        assertTrue("double parameter should be unboxed", lastInvocation.hasUnboxedParameter(0, double.class));
+        assertFalse("float parameter should be boxed", lastInvocation.hasUnboxedParameter(1, float.class));
+        assertEquals("first parameter", Double.doubleToRawLongBits(2.5), lastInvocation.getUnboxedParameterValue(0));
+    }
+
+    public void testPassesObjectMethodsToTheInvokable() throws Exception {
+        Object imposter = imposteriser.imposterise(mockObject, Runnable.class);
+
+        result = "imposter";
+        assertEquals("imposter", imposter.toString());
+        assertEquals("invoked method", Object.class.getMethod("toString"), lastInvocation.getInvokedMethod());
+
+        result = 42;
+        assertEquals(42, imposter.hashCode());
+
+        result = true;
+        assertTrue(imposter.equals("anything"));
+        assertEquals("parameter", "anything", lastInvocation.getParameter(0));
+    }
+
+    public void testThrowsExceptionsThrownByTheInvokable() throws Exception {
+        final IOException exception = new IOException();
+        Calculator calculator = imposteriser.imposterise(new Invokable() {
+            public Object invoke(Invocation invocation) throws Throwable {
+                throw exception;
+            }
+        }, Calculator.class);
+
+        try {
+            calculator.reset();
+            fail("should have thrown IOException");
+        }
+        catch (IOException e) {
+            assertSame(exception, e);
+        }
+    }
+
+    public void testReusesTheGeneratedClassForTheSameTypes() {
+        Object imposter1 = imposteriser.imposterise(mockObject, Calculator.class, CaptureControl.class);
+        Object imposter2 = imposteriser.imposterise(mockObject, Calculator.class, CaptureControl.class);
+        Object imposter3 = imposteriser.imposterise(mockObject, Calculator.class);
+
+        assertSame(imposter1.getClass(), imposter2.getClass());
+        assertNotSame(imposter1.getClass(), imposter3.getClass());
+    }
+
+    public void testKeepsReusingTheGeneratedClassWhileItIsInUse() {
+        Object imposter1 = imposteriser.imposterise(mockObject, Calculator.class);
+        System.gc();
+        Object imposter2 = imposteriser.imposterise(mockObject, Calculator.class);
+
+        assertSame(imposter1.getClass(), imposter2.getClass());
+    }
+
+    public void testCanMockTypesFromADynamicClassLoader() throws ClassNotFoundException {
+        ClassLoader interfaceClassLoader = new SyntheticEmptyInterfaceClassLoader();
+        Class<?> interfaceClass = interfaceClassLoader.loadClass("$UniqueTypeName$");
+
+        Object o = imposteriser.imposterise(mockObject, interfaceClass, new Class[0]);
+
+        assertTrue(interfaceClass.isInstance(o));
+    }
+
+    public void testCanSimultaneouslyMockTypesFromMultipleClassLoaders() throws ClassNotFoundException {
+        Class<?> interfaceClass1 = (new SyntheticEmptyInterfaceClassLoader()).loadClass("$UniqueTypeName1$");
+        Class<?> interfaceClass2 = CaptureControl.class;
+
+        Object o = imposteriser.imposterise(mockObject, interfaceClass1, interfaceClass2);
+
+        assertTrue(interfaceClass1.isInstance(o));
+        assertTrue(interfaceClass2.isInstance(o));
+    }
+
+    public void testCanImposteriseAClassInASignedJarFile() throws Exception {
+        URL jarURL = this.getClass().getClassLoader().getResource("signed.jar").toURI().toURL();
+        ClassLoader loader = new URLClassLoader(new URL[]{jarURL});
+        Class<?> typeInSignedJar = loader.loadClass("TypeInSignedJar");
+
+        Object o = imposteriser.imposterise(new VoidAction(), typeInSignedJar);
+
+        assertTrue(typeInSignedJar.isInstance(o));
+    }
+}
@@ -0,0 +1,229 @@
+package org.jmock.lib.concurrent;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hamcrest.Description;
+import org.jmock.ExpectationsExt;
+import org.jmock.Mockery;
+import org.jmock.States;
+import org.jmock.internal.StatePredicate;
+import org.jmock.lib.AssertionErrorTranslator;
+import org.junit.After;
+import org.junit.Test;
+
+public class StripedSynchroniserTests {
+    public interface Events {
+        void action();
+        void finished();
+    }
+    
+    StripedSynchroniser synchroniser = new StripedSynchroniser();
+    
+    Mockery mockery = new Mockery() {{
+        setExpectationErrorTranslator(AssertionErrorTranslator.INSTANCE);
+        setThreadingPolicy(synchroniser);
+    }};
+    
+    Blitzer blitzer = new Blitzer(16, 4);
+    
+    Events mockObject = mockery.mock(Events.class, "mockObject");
+    Events otherMockObject = mockery.mock(Events.class, "otherMockObject");
+    
+    @Test(timeout=250)
+    public void allowsMultipleThreadsToCallMockObjects() throws InterruptedException {
+        mockery.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            exactly(blitzer.totalActionCount()).of(mockObject).action();
+            exactly(blitzer.totalActionCount()).of(otherMockObject).action();
+        }});
+        
+        blitzer.blitz(new Runnable() {
+            public void run() {
+                mockObject.action();
+                otherMockObject.action();
+            }
+        });
+        
+        mockery.assertIsSatisfied();
+    }
+    
+    @Test(timeout=1000)
+    public void neverExceedsTheCardinalityOfAnExpectationMatchedByManyMockObjects() throws InterruptedException {
+        final int allowedCount = blitzer.totalActionCount() / 2;
+        final AtomicInteger successCount = new AtomicInteger();
+        
+        mockery.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            atMost(allowedCount).of(anything()).method("action");
+        }});
+        
+        blitzer.blitz(new Runnable() {
+            AtomicInteger counter = new AtomicInteger();
+            
+            public void run() {
+                Events events = counter.incrementAndGet() % 2 == 0 ? mockObject : otherMockObject;
+                try {
+                    events.action();
+                    successCount.incrementAndGet();
+                }
+                catch (AssertionError expected) {
+                }
+            }
+        });
+        
+        assertEquals(allowedCount, successCount.get());
+    }
+    
+    @Test(timeout=1000)
+    public void changesTheStateOfAStateMachineAtomicallyWhenMockObjectsAreInvokedInParallel() throws InterruptedException {
+        final States resource = mockery.states("resource").startsAs("free");
+        final StatePredicate free = new StatePredicate() {
+            final StatePredicate isFree = resource.is("free");
+            final CountDownLatch bothThreadsHaveLooked = new CountDownLatch(2);
+            
+            public boolean isActive() {
+                final boolean active = isFree.isActive();
+                // give the other thread a chance to look at the state before this one changes it
+                bothThreadsHaveLooked.countDown();
+                try {
+                    bothThreadsHaveLooked.await(100, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return active;
+            }
+            
+            public void describeTo(Description description) {
+                isFree.describeTo(description);
+            }
+        };
+        
+        mockery.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            allowing(mockObject).action(); when(free); then(resource.is("taken"));
+            allowing(otherMockObject).action(); when(free); then(resource.is("taken"));
+        }});
+        
+        final AtomicInteger successCount = new AtomicInteger();
+        Runnable takeResource = new Runnable() {
+            AtomicInteger counter = new AtomicInteger();
+            
+            public void run() {
+                Events events = counter.incrementAndGet() % 2 == 0 ? mockObject : otherMockObject;
+                try {
+                    events.action();
+                    successCount.incrementAndGet();
+                }
+                catch (AssertionError expected) {
+                }
+            }
+        };
+        Thread first = new Thread(takeResource);
+        Thread second = new Thread(takeResource);
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+        
+        assertEquals("invocations that took the resource", 1, successCount.get());
+    }
+    
+    @Test(timeout=250)
+    public void canWaitForAStateMachineToEnterAGivenState() throws InterruptedException {
+        final AtomicInteger counter = new AtomicInteger(blitzer.totalActionCount());
+        
+        final States threads = mockery.states("threads");
+        
+        mockery.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            exactly(blitzer.totalActionCount()).of(mockObject).action();
+                when(threads.isNot("finished"));
+                
+            oneOf(otherMockObject).finished();
+                then(threads.is("finished"));
+        }});
+        
+        blitzer.blitz(new Runnable() {
+            public void run() {
+                mockObject.action();
+                if (counter.decrementAndGet() == 0) {
+                    otherMockObject.finished();
+                }
+            }
+        });
+        
+        synchroniser.waitUntil(threads.is("finished"));
+    }
+
+    @Test(timeout=250)
+    public void failsTheTestIfStateMachineDoesNotEnterExpectedStateWithinTimeout() throws InterruptedException {
+        States threads = mockery.states("threads");
+        
+        try {
+            synchroniser.waitUntil(threads.is("finished"), 100);
+        }
+        catch (AssertionError e) {
+            return;
+        }
+        
+        fail("should have thrown AssertionError");
+    }
+    
+    @Test
+    public void throwsExpectationErrorIfExpectationFailsWhileWaitingForStateMachine() throws InterruptedException {
+        final States threads = mockery.states("threads");
+        
+        // This will cause an expectation error, and nothing will make
+        // the "threads" state machine transition to "finished" 
+        
+        blitzer.blitz(new Runnable() {
+            public void run() {
+                mockObject.action();
+            }
+        });
+        
+        try {
+            synchroniser.waitUntil(threads.is("finished"), 100);
+            fail("should have thrown AssertionError");
+        }
+        catch (AssertionError e) {
+            assertThat(e.getMessage(), containsString("action()"));
+        }
+    }
+    
+    @Test(timeout=1000)
+    public void canWaitForTheMockeryToBeSatisfied() throws InterruptedException {
+        mockery.checking(new ExpectationsExt() {protected void expect() throws Exception{
+            exactly(blitzer.totalActionCount()).of(mockObject).action();
+        }});
+        
+        Thread background = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    blitzer.blitz(new Runnable() {
+                        public void run() {
+                            mockObject.action();
+                        }
+                    });
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        background.start();
+        
+        mockery.waitForSatisfaction();
+        background.join();
+    }
+    
+    @After
+    public void cleanUp() {
+        blitzer.shutdown();
+    }
+}
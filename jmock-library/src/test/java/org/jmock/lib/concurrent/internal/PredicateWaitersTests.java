@@ -0,0 +1,95 @@
+package org.jmock.lib.concurrent.internal;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import junit.framework.TestCase;
+
+import org.jmock.internal.StateMachine;
+import org.jmock.internal.StatePredicate;
+
+public class PredicateWaitersTests extends TestCase {
+    ReentrantLock lock = new ReentrantLock();
+    PredicateWaiters waiters = new PredicateWaiters(lock);
+    StateMachine states = new StateMachine("states");
+    
+    public void testWakesOnlyThreadsWhosePredicateHasBecomeActive() throws InterruptedException {
+        Thread waitingForA = waitInBackgroundUntil(states.is("a"));
+        Thread waitingForB = waitInBackgroundUntil(states.is("b"));
+        
+        becomeAndSignal("a");
+        waitingForA.join(1000);
+        
+        assertFalse("thread waiting for a should have finished", waitingForA.isAlive());
+        assertTrue("thread waiting for b should still be waiting", waitingForB.isAlive());
+        
+        becomeAndSignal("b");
+        waitingForB.join(1000);
+        
+        assertFalse("thread waiting for b should have finished", waitingForB.isAlive());
+        assertFalse("should have no waiting threads", waiters.hasWaitingThreads());
+    }
+    
+    public void testReturnsImmediatelyIfPredicateIsAlreadyActive() throws Exception {
+        states.become("a");
+        
+        lock.lock();
+        try {
+            waiters.waitUntil(states.is("a"), new FixedTimeout(1000));
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+    
+    public void testTimesOutIfPredicateDoesNotBecomeActive() throws InterruptedException {
+        lock.lock();
+        try {
+            waiters.waitUntil(states.is("a"), new FixedTimeout(10));
+            fail("should have thrown TimeoutException");
+        }
+        catch (TimeoutException expected) {
+        }
+        finally {
+            lock.unlock();
+        }
+        
+        assertFalse("should have no waiting threads", waiters.hasWaitingThreads());
+    }
+    
+    private void becomeAndSignal(String state) {
+        lock.lock();
+        try {
+            states.become(state);
+            waiters.signalActivated();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+    
+    private Thread waitInBackgroundUntil(final StatePredicate predicate) throws InterruptedException {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                lock.lock();
+                try {
+                    waiters.waitUntil(predicate, new InfiniteTimeout());
+                }
+                catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                finally {
+                    lock.unlock();
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        
+        while (thread.getState() != Thread.State.WAITING || lock.hasQueuedThread(thread)) {
+            Thread.sleep(1);
+        }
+        return thread;
+    }
+}
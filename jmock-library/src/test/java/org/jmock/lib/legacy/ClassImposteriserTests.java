@@ -100,6 +100,17 @@ public class ClassImposteriserTests extends TestCase {
         assertEquals("result", imposter.foo());
     }
     
+    public void testReusesTheProxyClassForTheSameTypes() {
+        Object imposter1 = imposteriser.imposterise(action, ConcreteClassWithNastyConstructor.class, AnInterface.class);
+        Object imposter2 = imposteriser.imposterise(new VoidAction(), ConcreteClassWithNastyConstructor.class, AnInterface.class);
+        Object imposter3 = imposteriser.imposterise(action, ConcreteClassWithNastyConstructor.class);
+        
+        assertSame(imposter1.getClass(), imposter2.getClass());
+        assertNotSame(imposter1.getClass(), imposter3.getClass());
+        assertEquals("result", ((AnInterface)imposter1).foo());
+        assertNull(((AnInterface)imposter2).foo());
+    }
+    
     public void testCanImposteriseAClassInASignedJarFile() throws Exception {
         URL jarURL = this.getClass().getClassLoader().getResource("signed.jar").toURI().toURL();
         ClassLoader loader = new URLClassLoader(new URL[]{jarURL});
@@ -2,10 +2,14 @@ package org.jmock.lib.script;
 
 import static org.hamcrest.Matchers.sameInstance;
 import static org.jmock.lib.script.ScriptedAction.perform;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.TestCase;
 
 import org.jmock.ExpectationsExt;
 import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.support.MethodFactory;
 import org.junit.Assert;
 
 
@@ -92,4 +96,46 @@ public class ScriptedActionTests extends TestCase {
         
         context.assertIsSatisfied();
     }
+    
+    public void testReturnsTheValueOfTheLastStatementOfTheScript() throws Throwable {
+        ScriptedAction action = perform("int n = $0.length(); n * 2");
+        
+        assertEquals(6, action.invoke(invocationWith("abc")));
+        assertEquals("performed again", 8, action.invoke(invocationWith("abcd")));
+        assertNull("value of void script", perform("$0.getChars(0, 0, new char[0], 0)").invoke(invocationWith("abc")));
+    }
+    
+    public void testCanBePerformedByManyThreadsAtOnce() throws Exception {
+        final ScriptedAction action = perform("String s = $0; Thread.yield(); s");
+        final AtomicInteger mismatches = new AtomicInteger(0);
+        
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final String parameter = "thread " + t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 100; i++) {
+                            if (!parameter.equals(action.invoke(invocationWith(parameter)))) {
+                                mismatches.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals("performances that saw another thread's parameters", 0, mismatches.get());
+    }
+    
+    private Invocation invocationWith(Object parameter) {
+        return new Invocation("invokedObject", new MethodFactory().newMethod("method"), parameter);
+    }
 }